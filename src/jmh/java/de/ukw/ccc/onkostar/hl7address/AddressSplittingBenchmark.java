@@ -0,0 +1,190 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Throughput of the address splitting hot paths using all addresses of `testdaten.csv`
+/// or a scaled-up synthetic corpus derived from it.
+///
+/// Run with `-prof gc` to report the allocation rate, e.g.
+/// `-Dbenchmark.args="AddressSplittingBenchmark -prof gc"`
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddressSplittingBenchmark {
+
+    @Param({"testdaten", "synthetic"})
+    public String corpus;
+
+    @Param("100000")
+    public int syntheticSize;
+
+    private String[] hl7Addresses;
+
+    private String[] streetAddresses;
+
+    private String[] sapMciStreetAddresses;
+
+    private Hl7AddressSplitter hl7AddressSplitter;
+
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        var rows = readTestdaten();
+        if ("synthetic".equals(corpus)) {
+            rows = synthesize(rows, syntheticSize);
+        }
+
+        this.hl7Addresses = new String[rows.size()];
+        this.streetAddresses = new String[rows.size()];
+        this.sapMciStreetAddresses = new String[rows.size()];
+        for (var i = 0; i < rows.size(); i++) {
+            var row = rows.get(i);
+            this.hl7Addresses[i] = row[0];
+            this.streetAddresses[i] = row[0].substring(0, row[0].indexOf('^'));
+            this.sapMciStreetAddresses[i] = String.format("%s %s&%s&%s", row[1], row[2], row[1], row[2]);
+        }
+        this.hl7AddressSplitter = new DefaultHl7AddressSplitter();
+    }
+
+    private int nextIndex() {
+        var result = index;
+        index = (index + 1) % hl7Addresses.length;
+        return result;
+    }
+
+    @Benchmark
+    public Address hl7AddressSplitter() {
+        return hl7AddressSplitter.split(hl7Addresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public String streetName() {
+        return Address.getStreetNameFromStreetAddress(streetAddresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public String houseNumber() {
+        return Address.getHouseNumberFromStreetAddress(streetAddresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public StreetAddress splitStreetAddress() {
+        return Address.splitStreetAddress(streetAddresses[nextIndex()]);
+    }
+
+    @Benchmark
+    public String sapMciDecoding() {
+        return Address.getStreetAddressFromSapMciFormat(sapMciStreetAddresses[nextIndex()]);
+    }
+
+    /// Returns all rows of `testdaten.csv` as `{address, street name, house number}`
+    private static List<String[]> readTestdaten() throws IOException {
+        var result = new ArrayList<String[]>();
+        var lines = Files.readAllLines(Path.of("src/test/resources/testdaten.csv"), StandardCharsets.UTF_8);
+        for (var line : lines.subList(1, lines.size())) {
+            if (!line.isBlank()) {
+                result.add(parseCsvLine(line));
+            }
+        }
+        return result;
+    }
+
+    private static String[] parseCsvLine(String line) {
+        var fields = new String[3];
+        var position = 0;
+        for (var i = 0; i < fields.length; i++) {
+            int end;
+            if (position < line.length() && line.charAt(position) == '"') {
+                end = line.indexOf('"', position + 1);
+                fields[i] = line.substring(position + 1, end);
+                end++;
+            } else {
+                end = line.indexOf(',', position);
+                end = end < 0 ? line.length() : end;
+                fields[i] = line.substring(position, end);
+            }
+            position = end + 1;
+        }
+        return fields;
+    }
+
+    /// Derives `size` rows from the given rows with a fixed seed, mixing in
+    /// house number suffixes and ranges, missing house numbers and long street names
+    private static List<String[]> synthesize(List<String[]> rows, int size) {
+        var random = new Random(42);
+        var result = new ArrayList<String[]>(size);
+        for (var i = 0; i < size; i++) {
+            var row = rows.get(random.nextInt(rows.size()));
+            var streetName = row[1];
+            var houseNumber = String.valueOf(1 + random.nextInt(250));
+            String streetAddress;
+            switch (random.nextInt(6)) {
+                case 0:
+                    streetAddress = streetName + ", " + houseNumber;
+                    break;
+                case 1:
+                    houseNumber = houseNumber + (char) ('a' + random.nextInt(6));
+                    streetAddress = streetName + " " + houseNumber;
+                    break;
+                case 2:
+                    houseNumber = houseNumber + "-" + (Integer.parseInt(houseNumber) + 2);
+                    streetAddress = streetName + " " + houseNumber;
+                    break;
+                case 3:
+                    houseNumber = "";
+                    streetAddress = streetName;
+                    break;
+                case 4:
+                    streetName = streetName + " " + streetName + " " + streetName;
+                    streetAddress = streetName + " " + houseNumber;
+                    break;
+                default:
+                    streetAddress = streetName + " " + houseNumber;
+            }
+            result.add(new String[]{
+                    streetAddress + "^^Musterhausen^^01234^DE",
+                    streetName,
+                    houseNumber
+            });
+        }
+        return result;
+    }
+
+}
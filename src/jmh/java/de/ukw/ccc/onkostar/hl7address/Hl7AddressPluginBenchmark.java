@@ -0,0 +1,238 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/// Feeds ADT messages built from `testhl7-1.hl7` and `testhl7-2.hl7` through [Hl7AddressPlugin#isRelevantForAnalyzer(Hl7Message)]
+/// and [Hl7AddressPlugin#analyze(Hl7Message)]
+/// using an in-memory stand-in of the Onkostar API with configurable latency.
+///
+/// The stand-in always returns a patient with an unsplit street, so every message results in a save
+/// unless it is skipped as a repeated address by the fingerprint window.
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Hl7AddressPluginBenchmark {
+
+    @Param({"2.3", "2.4", "2.5", "2.6"})
+    public String hl7version;
+
+    /// Latency of each call to `getPatient` and `savePatient`
+    @Param({"0", "200"})
+    public int apiLatencyMicros;
+
+    @Param("1000")
+    public int patientCount;
+
+    /// Use `-p writeBehind=false,true` to compare direct saves with the write-behind queue
+    @Param("false")
+    public boolean writeBehind;
+
+    /// Use `-p fingerprintWindow=false,true` to compare with skipping repeated addresses of a patient
+    @Param("false")
+    public boolean fingerprintWindow;
+
+    /// Follows each message by an ADT^A31 with the same addresses, as sent by interface engines fanning out messages
+    @Param("false")
+    public boolean redelivered;
+
+    private Hl7Message[] hl7Messages;
+
+    private PipeParserRegistry pipeParserRegistry;
+
+    private PatientWriter patientWriter;
+
+    private Hl7AddressPlugin plugin;
+
+    private final LongAdder savedPatients = new LongAdder();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        var onkostarApi = stubOnkostarApi(TimeUnit.MICROSECONDS.toNanos(apiLatencyMicros));
+        var templates = new String[]{template("testhl7-1.hl7"), template("testhl7-2.hl7")};
+        var streetAddresses = Files.readAllLines(Path.of("src/test/resources/testdaten.csv"), StandardCharsets.UTF_8).stream()
+                .skip(1)
+                .filter(line -> !line.isBlank())
+                .map(line -> line.startsWith("\"") ? line.substring(1, line.indexOf('"', 1)) : line.substring(0, line.indexOf(',')))
+                .collect(Collectors.toList());
+
+        var copies = redelivered ? 2 : 1;
+        this.hl7Messages = new Hl7Message[streetAddresses.size() * 4 * copies];
+        for (var i = 0; i < hl7Messages.length; i++) {
+            var n = i / copies;
+            var message = templates[n % templates.length]
+                    .replace("|P|2.3", "|P|" + hl7version)
+                    .replace("|||2000123456||", String.format("|||%d||", 2000000000 + n % patientCount))
+                    .replaceFirst("\\|\\|\\|(Testweg 42|Am Schlag 4)\\^\\^Musterhausen\\^\\^12345\\^DE\\|", "|||" + escape(streetAddresses.get(n % streetAddresses.size())) + "|");
+            if (i % copies == 1) {
+                message = message.replace("ADT^A08", "ADT^A31");
+            }
+            this.hl7Messages[i] = new Hl7Message(onkostarApi);
+            this.hl7Messages[i].setHl7Version(hl7version);
+            this.hl7Messages[i].setMessage(message);
+        }
+
+        var properties = new Properties();
+        properties.setProperty(PatientWriter.ENABLED_KEY, String.valueOf(writeBehind));
+        properties.setProperty(AddressFingerprintWindow.SIZE_KEY, fingerprintWindow ? "10000" : "0");
+        var configuration = new PluginConfiguration(properties);
+        var metrics = new AnalyzerMetrics();
+        this.pipeParserRegistry = new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_FULL);
+        this.patientWriter = new PatientWriter(onkostarApi, configuration);
+        this.plugin = new Hl7AddressPlugin(
+                new PatientLookupCache(onkostarApi, configuration),
+                new Hl7MessageFilter(configuration),
+                new PidExtractor(pipeParserRegistry, metrics),
+                new AddressSelector(new DefaultHl7AddressSplitter(), configuration),
+                new StreetAddressCache(configuration),
+                new AddressChangeDetector(),
+                patientWriter,
+                new PatientLocks(),
+                new AddressFingerprintWindow(configuration),
+                metrics
+        );
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.patientWriter.destroy();
+        this.pipeParserRegistry.destroy();
+        if (savedPatients.sum() == 0) {
+            throw new IllegalStateException("No patient saved");
+        }
+    }
+
+    /// Latency of one message within a single thread
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void analyzeLatency(Cursor cursor) {
+        analyze(next(cursor));
+    }
+
+    /// Throughput of concurrent messages using all available processors
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(Threads.MAX)
+    public void analyzeThroughput(Cursor cursor) {
+        analyze(next(cursor));
+    }
+
+    private void analyze(Hl7Message hl7Message) {
+        if (plugin.isRelevantForAnalyzer(hl7Message)) {
+            plugin.analyze(hl7Message);
+        }
+    }
+
+    private Hl7Message next(Cursor cursor) {
+        var result = hl7Messages[cursor.index];
+        cursor.index = (cursor.index + 1) % hl7Messages.length;
+        return result;
+    }
+
+    private IOnkostarApi stubOnkostarApi(long latencyNanos) {
+        return (IOnkostarApi) Proxy.newProxyInstance(
+                IOnkostarApi.class.getClassLoader(),
+                new Class<?>[]{IOnkostarApi.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPatient":
+                            delay(latencyNanos);
+                            var patientId = args[0] instanceof Integer
+                                    ? String.format("20%08d", (Integer) args[0])
+                                    : String.valueOf(args[0]);
+                            return stubPatient((IOnkostarApi) proxy, patientId);
+                        case "savePatient":
+                            delay(latencyNanos);
+                            savedPatients.increment();
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubOnkostarApi";
+                        default:
+                            if (method.getReturnType() == boolean.class) {
+                                return false;
+                            }
+                            return method.getReturnType().isPrimitive() && method.getReturnType() != void.class ? 0 : null;
+                    }
+                }
+        );
+    }
+
+    private static Patient stubPatient(IOnkostarApi onkostarApi, String patientId) {
+        var address = new de.itc.onkostar.api.Address();
+        address.setStreet("Musterweg 1");
+        address.setZipCode("012345");
+        address.setCity("Musterhausen");
+
+        var result = new Patient(onkostarApi);
+        result.setId(Integer.parseInt(patientId.substring(2)));
+        result.setPatientId(patientId);
+        result.setAddress(address);
+        return result;
+    }
+
+    private static void delay(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    private static String template(String name) throws IOException {
+        return new String(new ClassPathResource(name).getInputStream().readAllBytes());
+    }
+
+    private static String escape(String replacement) {
+        return replacement.replace("\\", "\\\\").replace("$", "\\$");
+    }
+
+}
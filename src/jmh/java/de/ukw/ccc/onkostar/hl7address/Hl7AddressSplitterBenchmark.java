@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/// Compares the regex based XAD splitting used before with DefaultHl7AddressSplitter
+/// using all addresses of `testdaten.csv`
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Hl7AddressSplitterBenchmark {
+
+    private String[] hl7Addresses;
+
+    private Hl7AddressSplitter hl7AddressSplitter;
+
+    @Setup
+    public void setup() throws IOException {
+        this.hl7Addresses = Files.readAllLines(Path.of("src/test/resources/testdaten.csv"), StandardCharsets.UTF_8).stream()
+                .skip(1)
+                .map(line -> line.startsWith("\"") ? line.substring(1, line.indexOf('"', 1)) : line.substring(0, line.indexOf(',')))
+                .collect(Collectors.toList())
+                .toArray(new String[0]);
+        this.hl7AddressSplitter = new DefaultHl7AddressSplitter();
+    }
+
+    private int index;
+
+    private String nextHl7Address() {
+        var result = hl7Addresses[index];
+        index = (index + 1) % hl7Addresses.length;
+        return result;
+    }
+
+    @Benchmark
+    public Address regexSplitter() {
+        var hl7Address = nextHl7Address();
+        var pattern = Pattern.compile("(?<streetAddress>[^\\^]*)\\^(?<otherDesignation>[^\\^]*)\\^(?<city>[^\\^]*)\\^(?<state>[^\\^]*)\\^(?<postalCode>[^\\^]*)\\^(?<country>[^\\^]*)");
+        var matcher = pattern.matcher(hl7Address);
+        if (matcher.find()) {
+            return Address.builder()
+                    .withStreetAddress(matcher.group("streetAddress").trim())
+                    .withOtherDesignation(matcher.group("otherDesignation").trim())
+                    .withCity(matcher.group("city").trim())
+                    .withState(matcher.group("state").trim())
+                    .withPostalCode(matcher.group("postalCode").trim())
+                    .withCountry(matcher.group("country").trim())
+                    .build();
+        }
+        throw new RuntimeException("Cannot parse HL7 Address");
+    }
+
+    @Benchmark
+    public Address defaultHl7AddressSplitter() {
+        return hl7AddressSplitter.split(nextHl7Address());
+    }
+
+}
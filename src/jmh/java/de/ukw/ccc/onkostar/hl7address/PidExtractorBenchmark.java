@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.HL7Exception;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/// Compares PID extraction using HAPI with scanning the raw ER7 message
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PidExtractorBenchmark {
+
+    @Param({"2.3", "2.5"})
+    public String hl7version;
+
+    private Hl7Message hl7Message;
+
+    private PipeParserRegistry pipeParserRegistry;
+
+    private PidExtractor pidExtractor;
+
+    @Setup
+    public void setup() throws IOException {
+        var template = new String(new ClassPathResource("testhl7-1.hl7").getInputStream().readAllBytes());
+        this.hl7Message = new Hl7Message(null);
+        this.hl7Message.setHl7Version(hl7version);
+        this.hl7Message.setMessage(template.replace("|P|2.3", "|P|" + hl7version));
+        this.pipeParserRegistry = new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_FULL);
+        this.pidExtractor = new PidExtractor(pipeParserRegistry, new AnalyzerMetrics());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pipeParserRegistry.destroy();
+    }
+
+    @Benchmark
+    public PidData hapi() throws HL7Exception {
+        return pidExtractor.extractUsingHapi(hl7Message);
+    }
+
+    @Benchmark
+    public PidData er7Scanner() {
+        return Er7PidScanner.scan(hl7Message.getMessage());
+    }
+
+}
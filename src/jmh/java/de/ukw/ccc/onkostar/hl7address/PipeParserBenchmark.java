@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
+import de.itc.onkostar.api.hl7.utils.OnkostarValidationContext;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/// Compares the per-message parser cost of creating a new HapiContext for each message
+/// with reusing the parsers held by PipeParserRegistry.
+/// Parameter `obxCount` appends OBX segments to show the effect of parse mode `partial` on large messages.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeParserBenchmark {
+
+    @Param({"2.3", "2.4", "2.5", "2.6"})
+    public String hl7version;
+
+    @Param({"full", "partial"})
+    public String parseMode;
+
+    @Param({"0", "200"})
+    public int obxCount;
+
+    private String message;
+
+    private PipeParserRegistry pipeParserRegistry;
+
+    @Setup
+    public void setup() throws IOException {
+        var template = new String(new ClassPathResource("testhl7-1.hl7").getInputStream().readAllBytes());
+        var builder = new StringBuilder(template.replace("|P|2.3", "|P|" + hl7version).stripTrailing()).append('\r');
+        for (var i = 1; i <= obxCount; i++) {
+            builder.append("OBX|").append(i).append("|TX|LAB^Befund||")
+                    .append("Lorem ipsum dolor sit amet, consetetur sadipscing elitr ".repeat(8))
+                    .append("||||||F\r");
+        }
+        this.message = builder.toString();
+        this.pipeParserRegistry = new PipeParserRegistry(parseMode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pipeParserRegistry.destroy();
+    }
+
+    /// Behaviour before PipeParserRegistry: new context, model class factory and validation context per message
+    @Benchmark
+    public Message newHapiContextPerMessage() throws HL7Exception {
+        HapiContext context = new DefaultHapiContext(Executors.newCachedThreadPool());
+        context.setModelClassFactory(new CanonicalModelClassFactory(hl7version));
+        context.setValidationContext(new OnkostarValidationContext());
+        return context.getPipeParser().parse(message);
+    }
+
+    @Benchmark
+    public Message cachedPipeParser() throws HL7Exception {
+        return pipeParserRegistry.parse(hl7version, message);
+    }
+
+}
@@ -24,8 +24,6 @@
 
 package de.ukw.ccc.onkostar.hl7address;
 
-import java.util.regex.Pattern;
-
 /// See: https://hl7.eu/refactored/dtXAD.html
 public class Address {
     private String streetAddress;
@@ -34,6 +32,9 @@ public class Address {
     private String state;
     private String postalCode;
     private String country;
+    private String addressType;
+
+    private StreetAddress splitStreetAddress;
 
     protected Address() {
         this.streetAddress = "";
@@ -42,6 +43,7 @@ public class Address {
         this.state = "";
         this.postalCode = "";
         this.country = "";
+        this.addressType = "";
     }
 
     public static Address.Builder builder() {
@@ -49,7 +51,11 @@ public class Address {
     }
 
     public String getStreetAddress() {
-        return getStreetAddressFromSapMciFormat(streetAddress);
+        var result = this.splitStreetAddress;
+        if (null == result) {
+            return getStreetAddressFromSapMciFormat(this.streetAddress);
+        }
+        return result.getStreetAddress();
     }
 
     public String getOtherDesignation() {
@@ -72,38 +78,86 @@ public class Address {
         return country;
     }
 
+    public String getAddressType() {
+        return addressType;
+    }
+
     public String getStreetName() {
-        return getStreetNameFromStreetAddress(this.streetAddress);
+        return getSplitStreetAddress().getStreetName();
     }
 
     public String getHouseNumber() {
-        return getHouseNumberFromStreetAddress(this.streetAddress);
+        return getSplitStreetAddress().getHouseNumber();
     }
 
-    public static String getStreetNameFromStreetAddress(String streetAddress) {
-        var pattern = Pattern.compile("(?<streetName>[^,]+)+[,\\s]+(?<houseNumber>([0-9]+[A-Za-z\\s\\-/]*)*)$");
-        var matcher = pattern.matcher(getStreetAddressFromSapMciFormat(streetAddress));
-        if (matcher.find()) {
-            return matcher.group("streetName");
+    /// Returns street name and house number if already known, e.g. from the SAP MCI format, otherwise null
+    StreetAddress getKnownStreetAddress() {
+        return this.splitStreetAddress;
+    }
+
+    /// Splits the street address on first access only. The result is immutable, so a concurrent
+    /// first access at worst computes the same value twice.
+    private StreetAddress getSplitStreetAddress() {
+        var result = this.splitStreetAddress;
+        if (null == result) {
+            result = splitStreetAddress(this.streetAddress);
+            this.splitStreetAddress = result;
         }
-        return streetAddress;
+        return result;
+    }
+
+    public static String getStreetNameFromStreetAddress(String streetAddress) {
+        return splitStreetAddress(streetAddress).getStreetName();
     }
 
     public static String getHouseNumberFromStreetAddress(String streetAddress) {
-        var pattern = Pattern.compile("(?<streetName>[^,]+)+[,\\s]+(?<houseNumber>([0-9]+[A-Za-z\\s\\-/]*)*)$");
-        var matcher = pattern.matcher(getStreetAddressFromSapMciFormat(streetAddress));
-        if (matcher.find()) {
-            return matcher.group("houseNumber");
+        return splitStreetAddress(streetAddress).getHouseNumber();
+    }
+
+    /// Returns street name and house number using one single scan of the street address
+    public static StreetAddress splitStreetAddress(String streetAddress) {
+        var sapMciStreetAddress = getStreetAddressFromSapMciFormat(streetAddress);
+        var match = StreetAddressScanner.find(sapMciStreetAddress);
+        if (null != match) {
+            return new StreetAddress(sapMciStreetAddress, match.getStreetName(), match.getHouseNumber());
         }
-        return "";
+        return new StreetAddress(sapMciStreetAddress, streetAddress, "");
     }
 
-    private static String getStreetAddressFromSapMciFormat(String input) {
-        if (input.contains("&")) {
-            var parts = input.split("&");
-            if (parts.length == 3 && parts[0].equals(String.format("%s %s", parts[1], parts[2]))) {
-                return parts[0];
-            }
+    /// Same as splitStreetAddress() for a street address known not to be in SAP MCI format
+    static StreetAddress splitPlainStreetAddress(String streetAddress) {
+        var match = StreetAddressScanner.find(streetAddress);
+        if (null != match) {
+            return new StreetAddress(streetAddress, match.getStreetName(), match.getHouseNumber());
+        }
+        return new StreetAddress(streetAddress, streetAddress, "");
+    }
+
+    /// Returns `<street address>` of `<street address>&<street name>&<house number>`
+    /// if it equals `<street name> <house number>`, otherwise the input
+    static String getStreetAddressFromSapMciFormat(String input) {
+        var first = input.indexOf('&');
+        if (first < 0) {
+            return input;
+        }
+
+        // Trailing empty parts are ignored
+        var length = input.length();
+        while (length > 0 && input.charAt(length - 1) == '&') {
+            length--;
+        }
+        var second = input.indexOf('&', first + 1);
+        if (second < 0 || second >= length || input.lastIndexOf('&', length - 1) != second) {
+            return input;
+        }
+
+        var streetNameLength = second - first - 1;
+        var houseNumberLength = length - second - 1;
+        if (first == streetNameLength + 1 + houseNumberLength
+                && input.regionMatches(0, input, first + 1, streetNameLength)
+                && input.charAt(streetNameLength) == ' '
+                && input.regionMatches(streetNameLength + 1, input, second + 1, houseNumberLength)) {
+            return input.substring(0, first);
         }
 
         return input;
@@ -129,6 +183,13 @@ public class Address {
             return this;
         }
 
+        /// Uses street name and house number as given instead of splitting the street address
+        public Builder withStreetAddress(StreetAddress streetAddress) {
+            this.instance.streetAddress = streetAddress.getStreetAddress();
+            this.instance.splitStreetAddress = streetAddress;
+            return this;
+        }
+
         public Builder withOtherDesignation(String otherDesignation) {
             this.instance.otherDesignation = otherDesignation;
             return this;
@@ -154,6 +215,11 @@ public class Address {
             return this;
         }
 
+        public Builder withAddressType(String addressType) {
+            this.instance.addressType = addressType;
+            return this;
+        }
+
     }
 
 }
@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.Address;
+import org.springframework.stereotype.Component;
+
+/// Compares the current patient address with the proposed street name and house number,
+/// so the patient is only saved if anything has changed.
+/// Skipped and performed writes are counted by [AnalyzerMetrics].
+@Component
+public class AddressChangeDetector {
+
+    /// Returns `true` if street name or house number differ, ignoring `null` and surrounding whitespace
+    public boolean hasChanged(Address currentAddress, String streetName, String houseNumber) {
+        return differs(currentAddress.getStreet(), currentAddress.getHouseNumber(), streetName, houseNumber);
+    }
+
+    /// Same as [#hasChanged(Address, String, String)] for plain values
+    public static boolean differs(String currentStreet, String currentHouseNumber, String streetName, String houseNumber) {
+        return !normalize(currentStreet).equals(normalize(streetName))
+                || !normalize(currentHouseNumber).equals(normalize(houseNumber));
+    }
+
+    private static String normalize(String value) {
+        return null == value ? "" : value.trim();
+    }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/// Standalone tool to preview the result of a reorganisation using a CSV export of patient addresses.
+///
+/// The export is read record by record and split in chunks using a fork-join pool, applying the same rules as
+/// [ReorgAddressPlugin] using [ReorgAddressUpdater#change(String, String, StreetAddress)]. Each input record is written to the result CSV in the same order, followed by the proposed
+/// street name, house number and whether the address would be changed. Quoted fields may contain line breaks, which are kept unchanged.
+/// Only a bounded number of chunks is kept in memory at any time.
+///
+/// Usage: `AddressExportSplitter <input.csv> <output.csv> [--delimiter=,] [--street-column=strasse]
+/// [--house-number-column=hausnummer] [--charset=UTF-8] [--threads=<n>]`
+public final class AddressExportSplitter {
+
+    static final int CHUNK_SIZE = 4096;
+
+    static final String PROPOSED_STREET_COLUMN = "vorschlag_strasse";
+
+    static final String PROPOSED_HOUSE_NUMBER_COLUMN = "vorschlag_hausnummer";
+
+    static final String CHANGED_COLUMN = "geaendert";
+
+    private final char delimiter;
+
+    private final String streetColumn;
+
+    private final String houseNumberColumn;
+
+    private final Charset charset;
+
+    private final int threads;
+
+    AddressExportSplitter(char delimiter, String streetColumn, String houseNumberColumn, int threads) {
+        this(delimiter, streetColumn, houseNumberColumn, StandardCharsets.UTF_8, threads);
+    }
+
+    AddressExportSplitter(char delimiter, String streetColumn, String houseNumberColumn, Charset charset, int threads) {
+        this.delimiter = delimiter;
+        this.streetColumn = streetColumn;
+        this.houseNumberColumn = houseNumberColumn;
+        this.charset = charset;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Verwendung: AddressExportSplitter <input.csv> <output.csv> [--delimiter=,] "
+                    + "[--street-column=strasse] [--house-number-column=hausnummer] [--charset=UTF-8] [--threads=<n>]");
+            System.exit(1);
+        }
+
+        var delimiter = ',';
+        var streetColumn = "strasse";
+        var houseNumberColumn = "hausnummer";
+        var charset = StandardCharsets.UTF_8;
+        var threads = Runtime.getRuntime().availableProcessors();
+        for (var i = 2; i < args.length; i++) {
+            var arg = args[i];
+            if (arg.startsWith("--delimiter=") && arg.length() == "--delimiter=".length() + 1) {
+                delimiter = arg.charAt(arg.length() - 1);
+            } else if (arg.startsWith("--street-column=")) {
+                streetColumn = arg.substring("--street-column=".length());
+            } else if (arg.startsWith("--house-number-column=")) {
+                houseNumberColumn = arg.substring("--house-number-column=".length());
+            } else if (arg.startsWith("--charset=")) {
+                charset = Charset.forName(arg.substring("--charset=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else {
+                throw new IllegalArgumentException("Unbekannte Option: " + arg);
+            }
+        }
+
+        var start = System.nanoTime();
+        var result = new AddressExportSplitter(delimiter, streetColumn, houseNumberColumn, charset, threads)
+                .run(Path.of(args[0]), Path.of(args[1]));
+        System.out.printf(
+                "%d Anschriften verarbeitet, %d würden geändert (%d ms)%n",
+                result.getRowCount(),
+                result.getChangedCount(),
+                (System.nanoTime() - start) / 1_000_000
+        );
+    }
+
+    Result run(Path input, Path output) throws IOException {
+        var pool = new ForkJoinPool(threads);
+        try (var reader = Files.newBufferedReader(input, charset);
+             var writer = Files.newBufferedWriter(output, charset)) {
+            var lineNumber = new int[]{1};
+            var header = readRecord(reader, lineNumber);
+            if (null == header) {
+                throw new IllegalArgumentException("Leere Datei: " + input);
+            }
+            var columns = CsvFields.parse(header, delimiter);
+            var streetIndex = columns.indexOf(streetColumn);
+            var houseNumberIndex = columns.indexOf(houseNumberColumn);
+            if (streetIndex < 0) {
+                throw new IllegalArgumentException("Spalte '" + streetColumn + "' nicht vorhanden");
+            }
+
+            writer.write(header);
+            writer.write(delimiter + PROPOSED_STREET_COLUMN + delimiter + PROPOSED_HOUSE_NUMBER_COLUMN + delimiter + CHANGED_COLUMN);
+            writer.newLine();
+
+            var rowCount = 0L;
+            var changedCount = 0L;
+            var pending = new ArrayDeque<Future<Chunk>>();
+            List<String> lines;
+            while (!(lines = readChunk(reader, lineNumber)).isEmpty()) {
+                var chunkLines = lines;
+                pending.add(pool.submit(() -> processChunk(chunkLines, streetIndex, houseNumberIndex)));
+                if (pending.size() >= threads * 2) {
+                    var chunk = await(pending.removeFirst());
+                    writer.write(chunk.text);
+                    rowCount += chunk.rowCount;
+                    changedCount += chunk.changedCount;
+                }
+            }
+            while (!pending.isEmpty()) {
+                var chunk = await(pending.removeFirst());
+                writer.write(chunk.text);
+                rowCount += chunk.rowCount;
+                changedCount += chunk.changedCount;
+            }
+
+            return new Result(rowCount, changedCount);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<String> readChunk(BufferedReader reader, int[] lineNumber) throws IOException {
+        var result = new ArrayList<String>(CHUNK_SIZE);
+        String record;
+        while (result.size() < CHUNK_SIZE && null != (record = readRecord(reader, lineNumber))) {
+            if (!record.isBlank()) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    /// Reads the next CSV record without its terminator, keeping line breaks within quoted fields as they are.
+    /// The line number of the next record is updated in `lineNumber[0]`.
+    static String readRecord(BufferedReader reader, int[] lineNumber) throws IOException {
+        var firstLine = lineNumber[0];
+        var record = new StringBuilder(128);
+        var quoted = false;
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\r' || c == '\n') {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() == '\n') {
+                        if (quoted) {
+                            record.append('\r');
+                        }
+                        c = '\n';
+                    } else {
+                        reader.reset();
+                    }
+                }
+                lineNumber[0]++;
+                if (!quoted) {
+                    return record.toString();
+                }
+            }
+            record.append((char) c);
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Anführungszeichen in Zeile " + firstLine + " wird nicht geschlossen");
+        }
+        return record.length() == 0 ? null : record.toString();
+    }
+
+    private Chunk processChunk(List<String> lines, int streetIndex, int houseNumberIndex) {
+        var text = new StringBuilder(lines.size() * 96);
+        var changedCount = 0;
+        for (var line : lines) {
+            var fields = CsvFields.parse(line, delimiter);
+            var street = field(fields, streetIndex);
+            var houseNumber = field(fields, houseNumberIndex);
+
+            var streetAddress = Address.splitStreetAddress(street.trim());
+            var changed = ReorgAddressUpdater.change(street, houseNumber, streetAddress) == ReorgAddressUpdater.Change.CHANGED;
+            if (changed) {
+                changedCount++;
+            }
+
+            text.append(line).append(delimiter);
+            CsvFields.append(text, changed ? streetAddress.getStreetName() : street.trim(), delimiter);
+            text.append(delimiter);
+            CsvFields.append(text, changed ? streetAddress.getHouseNumber() : houseNumber.trim(), delimiter);
+            text.append(delimiter).append(changed).append(System.lineSeparator());
+        }
+        return new Chunk(text.toString(), lines.size(), changedCount);
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size()) {
+            return "";
+        }
+        return fields.get(index);
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Abgebrochen", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class Chunk {
+        private final String text;
+        private final int rowCount;
+        private final int changedCount;
+
+        private Chunk(String text, int rowCount, int changedCount) {
+            this.text = text;
+            this.rowCount = rowCount;
+            this.changedCount = changedCount;
+        }
+    }
+
+    static final class Result {
+        private final long rowCount;
+        private final long changedCount;
+
+        Result(long rowCount, long changedCount) {
+            this.rowCount = rowCount;
+            this.changedCount = changedCount;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public long getChangedCount() {
+            return changedCount;
+        }
+    }
+
+}
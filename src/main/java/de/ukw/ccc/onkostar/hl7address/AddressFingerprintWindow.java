@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/// Remembers a fingerprint of the last applied addresses (PID-11) per patient id (PID-3) for a limited time,
+/// so redelivered or fanned out messages with unchanged addresses (e.g. A08 followed by A31) are skipped
+/// before any patient lookup.
+///
+/// Patient ids and fingerprints are stored as 64 bit hashes in an open-addressing table of primitive longs.
+/// A patient id is searched within a short probe sequence only. If all of its slots are in use, the entry
+/// expiring first is replaced. A replaced entry only results in the next message being processed again.
+@Component
+public class AddressFingerprintWindow {
+
+    static final String SIZE_KEY = "hl7address.fingerprint.size";
+
+    static final String WINDOW_KEY = "hl7address.fingerprint.window-seconds";
+
+    private static final int MAX_PROBES = 8;
+
+    // Each slot uses three longs: patient id hash, fingerprint and expiration time
+    private static final int SLOT_SIZE = 3;
+
+    private static final long EMPTY = 0L;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] table;
+
+    private final int mask;
+
+    private final long windowNanos;
+
+    private final LongSupplier nanoTime;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    public AddressFingerprintWindow(final PluginConfiguration configuration) {
+        this(configuration.getInt(SIZE_KEY, 10_000), configuration.getInt(WINDOW_KEY, 60), System::nanoTime);
+    }
+
+    AddressFingerprintWindow(int maximumSize, int windowSeconds, LongSupplier nanoTime) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(Math.max(0, windowSeconds));
+        this.nanoTime = nanoTime;
+        if (maximumSize <= 0 || windowNanos == 0) {
+            this.table = new long[0];
+            this.mask = -1;
+        } else {
+            // At most half of all slots are used for the configured size
+            var slots = Integer.highestOneBit(Math.min(maximumSize, 1 << 24) * 2 - 1) << 1;
+            this.table = new long[slots * SLOT_SIZE];
+            this.mask = slots - 1;
+        }
+    }
+
+    /// Returns the fingerprint of the given encoded addresses
+    public static long fingerprint(List<String> hl7Addresses, String encodingCharacters) {
+        var hash = hash(FNV_OFFSET_BASIS, encodingCharacters);
+        for (var hl7Address : hl7Addresses) {
+            // Repetition separator, so ["a", "b"] and ["ab"] differ
+            hash = (hash ^ '~') * FNV_PRIME;
+            hash = hash(hash, hl7Address);
+        }
+        return mix(hash);
+    }
+
+    /// Returns true if the fingerprint has been applied to the patient within the window
+    public boolean contains(String patientId, long fingerprint) {
+        if (mask < 0) {
+            return false;
+        }
+        var key = key(patientId);
+        var now = nanoTime.getAsLong();
+        synchronized (table) {
+            var slot = (int) key & mask;
+            for (var probe = 0; probe < MAX_PROBES; probe++) {
+                var index = slot * SLOT_SIZE;
+                if (table[index] == EMPTY) {
+                    return false;
+                }
+                if (table[index] == key) {
+                    if (table[index + 1] == fingerprint && now - table[index + 2] <= 0) {
+                        hitCount.increment();
+                        return true;
+                    }
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return false;
+    }
+
+    /// Remembers the fingerprint as applied to the patient, replacing the previous one
+    public void put(String patientId, long fingerprint) {
+        if (mask < 0) {
+            return;
+        }
+        var key = key(patientId);
+        var expiresAt = nanoTime.getAsLong() + windowNanos;
+        synchronized (table) {
+            var slot = (int) key & mask;
+            var target = -1;
+            for (var probe = 0; probe < MAX_PROBES; probe++) {
+                var index = slot * SLOT_SIZE;
+                if (table[index] == key || table[index] == EMPTY) {
+                    target = index;
+                    break;
+                }
+                if (target < 0 || table[index + 2] - table[target + 2] < 0) {
+                    target = index;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[target] = key;
+            table[target + 1] = fingerprint;
+            table[target + 2] = expiresAt;
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    private static long key(String patientId) {
+        var key = mix(hash(FNV_OFFSET_BASIS, patientId));
+        return key == EMPTY ? 1L : key;
+    }
+
+    /// FNV-1a over all chars
+    private static long hash(long hash, String value) {
+        for (var i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /// Final mixing step of MurmurHash3, so the low bits used for the slot depend on all chars
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/// Selects the address to be used from all PID-11 repetitions of a message by its address type (XAD-7).
+/// Address types not contained in the configured priority rank behind all listed types;
+/// on equal rank the first repetition is used. Repetitions without a street address are ignored.
+@Component
+public class AddressSelector {
+
+    static final String ADDRESS_TYPE_PRIORITY_KEY = "hl7address.address-type-priority";
+
+    static final String DEFAULT_ADDRESS_TYPE_PRIORITY = "H,P,C,L,M";
+
+    private final Hl7AddressSplitter hl7AddressSplitter;
+
+    private final List<String> addressTypePriority;
+
+    public AddressSelector(final Hl7AddressSplitter hl7AddressSplitter, final PluginConfiguration configuration) {
+        this.hl7AddressSplitter = hl7AddressSplitter;
+        this.addressTypePriority = Arrays.stream(configuration.getString(ADDRESS_TYPE_PRIORITY_KEY, DEFAULT_ADDRESS_TYPE_PRIORITY).split(","))
+                .map(String::trim)
+                .filter(addressType -> !addressType.isEmpty())
+                .map(String::toUpperCase)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    public Optional<Address> select(List<String> hl7Addresses) {
+        return select(hl7Addresses, XadDecoder.DEFAULT_ENCODING_CHARACTERS);
+    }
+
+    /// Same as select(hl7Addresses) for addresses encoded using the given MSH-1 and MSH-2 encoding characters
+    public Optional<Address> select(List<String> hl7Addresses, String encodingCharacters) {
+        Address result = null;
+        var resultRank = Integer.MAX_VALUE;
+
+        for (var hl7Address : hl7Addresses) {
+            if (null == hl7Address || hl7Address.isBlank()) {
+                continue;
+            }
+            var address = hl7AddressSplitter.split(hl7Address, encodingCharacters);
+            if (null == address.getStreetAddress() || address.getStreetAddress().isBlank()) {
+                continue;
+            }
+            var rank = rank(address.getAddressType());
+            if (rank < resultRank) {
+                result = address;
+                resultRank = rank;
+            }
+        }
+
+        return Optional.ofNullable(result);
+    }
+
+    private int rank(String addressType) {
+        var index = addressTypePriority.indexOf(addressType.toUpperCase());
+        return index < 0 ? addressTypePriority.size() : index;
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Durations of each processing stage and counts of outcomes of both analyzers.
+///
+/// Each processed patient is counted with exactly one outcome. Addresses without a house number are
+/// counted separately, as such a patient is still saved or skipped afterwards. So are writes skipped because the
+/// address did not change and writes actually performed, which excludes dry runs and failed queued saves.
+///
+/// The values are published as MXBeans within the domain `de.ukw.ccc.onkostar.hl7address`
+/// using the platform MBean server, so no additional metrics library is required.
+@Component
+public class AnalyzerMetrics implements AnalyzerMetricsMXBean, InitializingBean, DisposableBean {
+
+    static final String DOMAIN = "de.ukw.ccc.onkostar.hl7address";
+
+    public enum Stage {
+        PARSE,
+        PID_EXTRACTION,
+        PATIENT_LOOKUP,
+        SPLIT,
+        DIFF,
+        SAVE
+    }
+
+    public enum Outcome {
+        PATIENT_NOT_FOUND,
+        SKIPPED,
+        SAVED,
+        REPORTED
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(AnalyzerMetrics.class);
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+
+    private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+
+    private final LongAdder unparsableAddresses = new LongAdder();
+
+    private final LongAdder skippedWrites = new LongAdder();
+
+    private final LongAdder performedWrites = new LongAdder();
+
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+
+    public AnalyzerMetrics() {
+        for (var stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+        for (var outcome : Outcome.values()) {
+            outcomes.put(outcome, new LongAdder());
+        }
+    }
+
+    /// Records the duration of the given stage started at `startNanos` using [System#nanoTime()]
+    public void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    public void count(Outcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    public void countUnparsableAddress() {
+        unparsableAddresses.increment();
+    }
+
+    /// Counts a write skipped because the address did not change
+    public void countSkippedWrite() {
+        skippedWrites.increment();
+    }
+
+    /// Counts a patient actually saved
+    public void countPerformedWrite() {
+        performedWrites.increment();
+    }
+
+    public StageMetricsMXBean getStage(Stage stage) {
+        return stages.get(stage);
+    }
+
+    @Override
+    public long getPatientNotFoundCount() {
+        return outcomes.get(Outcome.PATIENT_NOT_FOUND).sum();
+    }
+
+    @Override
+    public long getUnparsableAddressCount() {
+        return unparsableAddresses.sum();
+    }
+
+    @Override
+    public long getSkippedWriteCount() {
+        return skippedWrites.sum();
+    }
+
+    @Override
+    public long getPerformedWriteCount() {
+        return performedWrites.sum();
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return outcomes.get(Outcome.SKIPPED).sum();
+    }
+
+    @Override
+    public long getSavedCount() {
+        return outcomes.get(Outcome.SAVED).sum();
+    }
+
+    @Override
+    public long getReportedCount() {
+        return outcomes.get(Outcome.REPORTED).sum();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=AnalyzerMetrics"), this);
+            for (var stage : Stage.values()) {
+                var name = new ObjectName(DOMAIN + ":type=Stage,name=" + stage.name().toLowerCase(Locale.ROOT));
+                register(server, name, stages.get(stage));
+            }
+        } catch (JMException e) {
+            logger.warn("Kann Metriken nicht über JMX bereitstellen", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        for (var name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.debug("Kann Metriken '{}' nicht entfernen", name, e);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    private void register(MBeanServer server, ObjectName name, Object mbean) throws JMException {
+        // Replace beans left behind by a previous plugin context
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        registeredNames.add(name);
+    }
+
+}
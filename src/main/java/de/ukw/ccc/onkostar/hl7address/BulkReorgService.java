@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/// Reorganises the addresses of the given patients independently of Onkostar triggering
+/// [ReorgAddressPlugin] once for each disease.
+///
+/// Patient ids are processed in chunks on a work-stealing pool with the configured concurrency.
+/// Duplicate patient ids are processed only once. Progress and throughput are logged periodically.
+/// Each patient is updated while holding its lock in [PatientLocks], so HL7 messages for the same patient
+/// are not overwritten with stale data.
+///
+/// A reorganisation can be started using the JMX operation `reorganize` of
+/// `de.ukw.ccc.onkostar.hl7address:type=BulkReorg` with a file of patient ids. It runs in a background thread,
+/// only one at a time, and its progress is available as attribute `Status`.
+@Component
+public class BulkReorgService implements BulkReorgMXBean, InitializingBean, DisposableBean {
+
+    static final String CONCURRENCY_KEY = "hl7address.reorg.bulk.concurrency";
+
+    static final String CHUNK_SIZE_KEY = "hl7address.reorg.bulk.chunk-size";
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Logger logger = LoggerFactory.getLogger(BulkReorgService.class);
+
+    private final IOnkostarApi onkostarApi;
+
+    private final ReorgAddressUpdater reorgAddressUpdater;
+
+    private final PatientLocks patientLocks;
+
+    private final int concurrency;
+
+    private final int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Progress currentProgress;
+
+    private volatile String status = "Keine Reorganisation gestartet";
+
+    private ObjectName objectName;
+
+    public BulkReorgService(
+            final IOnkostarApi onkostarApi,
+            final ReorgAddressUpdater reorgAddressUpdater,
+            final PatientLocks patientLocks,
+            final PluginConfiguration configuration
+    ) {
+        this.onkostarApi = onkostarApi;
+        this.reorgAddressUpdater = reorgAddressUpdater;
+        this.patientLocks = patientLocks;
+        this.concurrency = Math.max(1, configuration.getInt(CONCURRENCY_KEY, Runtime.getRuntime().availableProcessors()));
+        this.chunkSize = Math.max(1, configuration.getInt(CHUNK_SIZE_KEY, 100));
+    }
+
+    @Override
+    public String reorganize(String patientIdFile) {
+        var file = Path.of(patientIdFile);
+        if (!Files.isReadable(file)) {
+            return "Fehler: Datei '" + patientIdFile + "' kann nicht gelesen werden";
+        }
+        if (!running.compareAndSet(false, true)) {
+            return "Fehler: Reorganisation läuft bereits";
+        }
+        status = "Läuft: Datei '" + patientIdFile + "' wird gelesen";
+
+        var thread = new Thread(() -> {
+            try {
+                run(file);
+            } finally {
+                running.set(false);
+            }
+        }, "hl7address-bulk-reorg");
+        thread.setDaemon(true);
+        thread.start();
+        return "Reorganisation gestartet";
+    }
+
+    @Override
+    public String getStatus() {
+        var progress = currentProgress;
+        if (null != progress) {
+            return "Läuft: " + format(progress.snapshot(System.nanoTime()));
+        }
+        return status;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void run(Path patientIdFile) {
+        try (var lines = Files.lines(patientIdFile, StandardCharsets.UTF_8)) {
+            reorganize(lines.map(this::parsePatientId));
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Kann Datei '{}' mit Patienten-IDs nicht lesen", patientIdFile, e);
+            status = "Fehler: " + e.getMessage();
+        } catch (RuntimeException e) {
+            logger.error("Reorganisation abgebrochen", e);
+            status = "Fehler: " + e.getMessage();
+        }
+    }
+
+    public Result reorganize(Stream<Integer> patientIds) {
+        return reorganize(patientIds.iterator());
+    }
+
+    /// Runs the reorganisation within the calling thread, waiting for any other run to finish
+    public synchronized Result reorganize(Iterator<Integer> patientIds) {
+        var progress = new Progress(System.nanoTime());
+        currentProgress = progress;
+        var pool = new ForkJoinPool(concurrency);
+        // Bounds the number of chunks read ahead
+        var maxChunks = concurrency * 2;
+        var chunks = new Semaphore(maxChunks);
+        var seenPatientIds = new BitSet();
+        var lastProgress = progress.startNanos;
+
+        logger.info("Reorganisation mit {} Threads gestartet", concurrency);
+        try {
+            while (patientIds.hasNext()) {
+                var chunk = new int[chunkSize];
+                var size = 0;
+                while (size < chunkSize && patientIds.hasNext()) {
+                    var patientId = patientIds.next();
+                    if (null == patientId || patientId < 0 || seenPatientIds.get(patientId)) {
+                        continue;
+                    }
+                    seenPatientIds.set(patientId);
+                    chunk[size++] = patientId;
+                }
+                if (size == 0) {
+                    continue;
+                }
+
+                chunks.acquireUninterruptibly();
+                var chunkLength = size;
+                pool.execute(() -> {
+                    try {
+                        processChunk(chunk, chunkLength, progress);
+                    } finally {
+                        chunks.release();
+                    }
+                });
+
+                var now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    logProgress(progress.snapshot(now));
+                    lastProgress = now;
+                }
+            }
+            chunks.acquireUninterruptibly(maxChunks);
+        } finally {
+            pool.shutdown();
+            currentProgress = null;
+        }
+
+        var result = progress.snapshot(System.nanoTime());
+        status = "Beendet: " + format(result);
+        logger.info("Reorganisation beendet: {}", format(result));
+        return result;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=BulkReorg");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.objectName = name;
+        } catch (JMException e) {
+            logger.warn("Kann Reorganisation nicht über JMX bereitstellen", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (null == objectName) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.debug("Kann Reorganisation '{}' nicht entfernen", objectName, e);
+        }
+    }
+
+    /// Empty lines and lines starting with `#` are ignored
+    private Integer parsePatientId(String line) {
+        var value = line.trim();
+        if (value.isEmpty() || value.startsWith("#")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Ungültige Patienten-ID '{}' wird übersprungen", value);
+            return null;
+        }
+    }
+
+    private void processChunk(int[] patientIds, int length, Progress progress) {
+        for (var i = 0; i < length; i++) {
+            try {
+                var patient = onkostarApi.getPatient(patientIds[i]);
+                if (null == patient) {
+                    logger.warn("Kein Patient für ID '{}' gefunden", patientIds[i]);
+                    progress.failed.increment();
+                } else if (update(patient)) {
+                    progress.changed.increment();
+                }
+            } catch (Exception e) {
+                logger.error("Kann Anschrift des Patienten mit ID '{}' nicht aktualisieren", patientIds[i], e);
+                progress.failed.increment();
+            } finally {
+                progress.processed.increment();
+            }
+        }
+    }
+
+    /// The patient is loaded again while holding its lock, as an HL7 message may have changed it in the meantime
+    private boolean update(Patient patient) {
+        if (null == patient.getPatientId()) {
+            return reorgAddressUpdater.update(patient);
+        }
+        var changed = new AtomicBoolean();
+        patientLocks.runIfLatest(patient.getPatientId(), () -> {
+            var current = onkostarApi.getPatient(patient.getId());
+            if (null != current) {
+                changed.set(reorgAddressUpdater.update(current));
+            }
+        });
+        return changed.get();
+    }
+
+    private void logProgress(Result result) {
+        logger.info("Reorganisation läuft: {}", format(result));
+    }
+
+    private static String format(Result result) {
+        return String.format(
+                "%d Patienten verarbeitet, %d geändert, %d fehlerhaft, %.1f Patienten/s",
+                result.getProcessedCount(),
+                result.getChangedCount(),
+                result.getFailedCount(),
+                result.getPatientsPerSecond()
+        );
+    }
+
+    private static final class Progress {
+        private final long startNanos;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder changed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        private Progress(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        private Result snapshot(long nowNanos) {
+            return new Result(processed.sum(), changed.sum(), failed.sum(), nowNanos - startNanos);
+        }
+    }
+
+    public static final class Result {
+        private final long processedCount;
+        private final long changedCount;
+        private final long failedCount;
+        private final long durationNanos;
+
+        Result(long processedCount, long changedCount, long failedCount, long durationNanos) {
+            this.processedCount = processedCount;
+            this.changedCount = changedCount;
+            this.failedCount = failedCount;
+            this.durationNanos = durationNanos;
+        }
+
+        public long getProcessedCount() {
+            return processedCount;
+        }
+
+        public long getChangedCount() {
+            return changedCount;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public double getPatientsPerSecond() {
+            return durationNanos <= 0 ? 0 : processedCount * 1e9 / durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return format(this);
+        }
+    }
+
+}
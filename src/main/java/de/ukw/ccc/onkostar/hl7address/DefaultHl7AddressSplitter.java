@@ -26,26 +26,22 @@ package de.ukw.ccc.onkostar.hl7address;
 
 import org.springframework.stereotype.Service;
 
-import java.util.regex.Pattern;
-
+/// Splits an encoded XAD in one scan using XadDecoder, including escape sequences and SAP MCI format.
+/// Missing trailing components are empty, components after XAD-7 are ignored.
 @Service
 public class DefaultHl7AddressSplitter implements Hl7AddressSplitter {
+
     @Override
     public Address split(String hl7address) {
-        var pattern = Pattern.compile("(?<streetAddress>[^\\^]*)\\^(?<otherDesignation>[^\\^]*)\\^(?<city>[^\\^]*)\\^(?<state>[^\\^]*)\\^(?<postalCode>[^\\^]*)\\^(?<country>[^\\^]*)");
-        var matcher = pattern.matcher(hl7address);
+        return split(hl7address, XadDecoder.DEFAULT_ENCODING_CHARACTERS);
+    }
 
-        if (matcher.find()) {
-            return Address.builder()
-                    .withStreetAddress(matcher.group("streetAddress").trim())
-                    .withOtherDesignation(matcher.group("otherDesignation").trim())
-                    .withCity(matcher.group("city").trim())
-                    .withState(matcher.group("state").trim())
-                    .withPostalCode(matcher.group("postalCode").trim())
-                    .withCountry(matcher.group("country").trim())
-                    .build();
+    @Override
+    public Address split(String hl7address, String encodingCharacters) {
+        if (null == hl7address) {
+            throw new RuntimeException("Cannot parse HL7 Address");
         }
-
-        throw new RuntimeException("Cannot parse HL7 Address");
+        return XadDecoder.of(encodingCharacters).decode(hl7address);
     }
+
 }
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import java.util.ArrayList;
+
+/// Extracts PID-3 and PID-11 directly from an ER7 encoded message without creating a HAPI message.
+/// Returns `null` for anything unusual, e.g. other than default encoding characters, escape sequences
+/// or a missing PID segment. These messages have to be parsed using HAPI.
+final class Er7PidScanner {
+
+    private static final String DEFAULT_ENCODING_CHARACTERS = "^~\\&";
+
+    private static final char FIELD_SEPARATOR = '|';
+
+    private static final char COMPONENT_SEPARATOR = '^';
+
+    private static final char REPETITION_SEPARATOR = '~';
+
+    private static final char ESCAPE_CHARACTER = '\\';
+
+    private static final char SUBCOMPONENT_SEPARATOR = '&';
+
+    private static final int PATIENT_ID_FIELD = 3;
+
+    private static final int PATIENT_ADDRESS_FIELD = 11;
+
+    private Er7PidScanner() {
+    }
+
+    static PidData scan(String message) {
+        if (null == message
+                || !message.startsWith("MSH")
+                || message.length() < 8
+                || message.charAt(3) != FIELD_SEPARATOR
+                || !message.startsWith(DEFAULT_ENCODING_CHARACTERS, 4)) {
+            return null;
+        }
+
+        var length = message.length();
+        var segmentStart = 0;
+        while (segmentStart < length) {
+            var segmentEnd = segmentStart;
+            while (segmentEnd < length && message.charAt(segmentEnd) != '\r' && message.charAt(segmentEnd) != '\n') {
+                segmentEnd++;
+            }
+            if (message.startsWith("PID", segmentStart)
+                    && (segmentEnd == segmentStart + 3 || message.charAt(segmentStart + 3) == FIELD_SEPARATOR)) {
+                return scanPid(message, segmentStart, segmentEnd);
+            }
+            segmentStart = segmentEnd + 1;
+        }
+
+        return null;
+    }
+
+    private static PidData scanPid(String message, int segmentStart, int segmentEnd) {
+        var patientIdStart = fieldStart(message, segmentStart, segmentEnd, PATIENT_ID_FIELD);
+        var patientIdEnd = patientIdStart;
+        while (patientIdEnd < segmentEnd) {
+            var c = message.charAt(patientIdEnd);
+            if (c == FIELD_SEPARATOR || c == REPETITION_SEPARATOR || c == COMPONENT_SEPARATOR) {
+                break;
+            }
+            if (c == SUBCOMPONENT_SEPARATOR || c == ESCAPE_CHARACTER) {
+                return null;
+            }
+            patientIdEnd++;
+        }
+        var patientId = patientIdEnd > patientIdStart ? message.substring(patientIdStart, patientIdEnd) : null;
+
+        var addressStart = fieldStart(message, segmentStart, segmentEnd, PATIENT_ADDRESS_FIELD);
+        var addressEnd = addressStart;
+        while (addressEnd < segmentEnd && message.charAt(addressEnd) != FIELD_SEPARATOR) {
+            if (message.charAt(addressEnd) == ESCAPE_CHARACTER) {
+                return null;
+            }
+            addressEnd++;
+        }
+
+        var addresses = new ArrayList<String>(2);
+        var repetitionStart = addressStart;
+        while (repetitionStart < addressEnd) {
+            var repetitionEnd = message.indexOf(REPETITION_SEPARATOR, repetitionStart);
+            if (repetitionEnd < 0 || repetitionEnd > addressEnd) {
+                repetitionEnd = addressEnd;
+            }
+            addresses.add(encodeRepetition(message, repetitionStart, repetitionEnd));
+            repetitionStart = repetitionEnd + 1;
+        }
+
+        return PidData.of(patientId, addresses);
+    }
+
+    /// Returns the start of the given field or the segment end if there is no such field
+    private static int fieldStart(String message, int segmentStart, int segmentEnd, int field) {
+        var position = segmentStart + 3;
+        for (var i = 0; i < field; i++) {
+            position = message.indexOf(FIELD_SEPARATOR, position);
+            if (position < 0 || position >= segmentEnd) {
+                return segmentEnd;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    /// Same as HAPI `Type.encode()`: Trailing empty subcomponents and components are omitted
+    private static String encodeRepetition(String message, int start, int end) {
+        if (!needsEncoding(message, start, end)) {
+            return message.substring(start, end);
+        }
+
+        var builder = new StringBuilder(end - start);
+        var encodedLength = 0;
+        var componentStart = start;
+        while (componentStart <= end) {
+            var componentEnd = message.indexOf(COMPONENT_SEPARATOR, componentStart);
+            if (componentEnd < 0 || componentEnd > end) {
+                componentEnd = end;
+            }
+            var valueEnd = componentEnd;
+            while (valueEnd > componentStart && message.charAt(valueEnd - 1) == SUBCOMPONENT_SEPARATOR) {
+                valueEnd--;
+            }
+
+            if (componentStart > start) {
+                builder.append(COMPONENT_SEPARATOR);
+            }
+            builder.append(message, componentStart, valueEnd);
+            if (valueEnd > componentStart) {
+                encodedLength = builder.length();
+            }
+            componentStart = componentEnd + 1;
+        }
+        builder.setLength(encodedLength);
+        return builder.toString();
+    }
+
+    private static boolean needsEncoding(String message, int start, int end) {
+        if (end == start) {
+            return false;
+        }
+        var last = message.charAt(end - 1);
+        if (last == COMPONENT_SEPARATOR || last == SUBCOMPONENT_SEPARATOR) {
+            return true;
+        }
+        for (var i = start + 1; i < end; i++) {
+            if (message.charAt(i) == COMPONENT_SEPARATOR && message.charAt(i - 1) == SUBCOMPONENT_SEPARATOR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
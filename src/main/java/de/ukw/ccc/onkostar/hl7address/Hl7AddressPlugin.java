@@ -24,42 +24,64 @@
 
 package de.ukw.ccc.onkostar.hl7address;
 
-import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
-import ca.uhn.hl7v2.HapiContext;
-import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
-import ca.uhn.hl7v2.parser.PipeParser;
-import de.itc.onkostar.api.IOnkostarApi;
-import de.itc.onkostar.api.Patient;
 import de.itc.onkostar.api.analysis.AnalyzerRequirement;
 import de.itc.onkostar.api.analysis.IHl7Analyzer;
 import de.itc.onkostar.api.analysis.OnkostarPluginType;
-import de.itc.onkostar.api.hl7.*;
-import de.itc.onkostar.api.hl7.utils.OnkostarValidationContext;
-import de.itc.onkostar.api.hl7.wrapper.CX;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import de.ukw.ccc.onkostar.hl7address.AnalyzerMetrics.Outcome;
+import de.ukw.ccc.onkostar.hl7address.AnalyzerMetrics.Stage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
-
 @Component
 public class Hl7AddressPlugin implements IHl7Analyzer {
 
     private final Logger logger = LoggerFactory.getLogger(Hl7AddressPlugin.class);
 
-    private final IOnkostarApi onkostarApi;
+    private final PatientLookupCache patientLookupCache;
+
+    private final Hl7MessageFilter messageFilter;
+
+    private final PidExtractor pidExtractor;
+
+    private final AddressSelector addressSelector;
+
+    private final StreetAddressCache streetAddressCache;
+
+    private final AddressChangeDetector addressChangeDetector;
 
-    private final Hl7AddressSplitter hl7AddressSplitter;
+    private final PatientWriter patientWriter;
 
-    public Hl7AddressPlugin(final IOnkostarApi onkostarApi, final Hl7AddressSplitter hl7AddressSplitter) {
-        this.onkostarApi = onkostarApi;
-        this.hl7AddressSplitter = hl7AddressSplitter;
+    private final PatientLocks patientLocks;
+
+    private final AddressFingerprintWindow fingerprintWindow;
+
+    private final AnalyzerMetrics metrics;
+
+    public Hl7AddressPlugin(
+            final PatientLookupCache patientLookupCache,
+            final Hl7MessageFilter messageFilter,
+            final PidExtractor pidExtractor,
+            final AddressSelector addressSelector,
+            final StreetAddressCache streetAddressCache,
+            final AddressChangeDetector addressChangeDetector,
+            final PatientWriter patientWriter,
+            final PatientLocks patientLocks,
+            final AddressFingerprintWindow fingerprintWindow,
+            final AnalyzerMetrics metrics
+    ) {
+        this.patientLookupCache = patientLookupCache;
+        this.messageFilter = messageFilter;
+        this.pidExtractor = pidExtractor;
+        this.addressSelector = addressSelector;
+        this.streetAddressCache = streetAddressCache;
+        this.addressChangeDetector = addressChangeDetector;
+        this.patientWriter = patientWriter;
+        this.patientLocks = patientLocks;
+        this.fingerprintWindow = fingerprintWindow;
+        this.metrics = metrics;
     }
 
     @Override
@@ -84,7 +106,7 @@ public class Hl7AddressPlugin implements IHl7Analyzer {
 
     @Override
     public boolean isRelevantForAnalyzer(Hl7Message hl7Message) {
-        return true;
+        return messageFilter.isRelevant(hl7Message.getMessage());
     }
 
     @Override
@@ -99,131 +121,120 @@ public class Hl7AddressPlugin implements IHl7Analyzer {
 
     @Override
     public void analyze(Hl7Message hl7Message) {
+        var ticket = patientLocks.acquireTicket();
         try {
-            var patientOption = getRelatedPatient(hl7Message);
-            if (patientOption.isPresent()) {
-                getAddressList(hl7Message).forEach((address) -> {
-                    var patient = patientOption.get();
-                    var patientAddress = patient.getAddress();
-                    var hl7Address = hl7AddressSplitter.split(address);
-
-                    if (null == patientAddress) {
-                        return;
-                    }
-
-                    var patientStreet = patientAddress.getStreet() == null ? "" : patientAddress.getStreet();
-                    var patientHouseNumber = patientAddress.getHouseNumber() == null ? "" : patientAddress.getHouseNumber();
-
-                    if (patientStreet.equals(hl7Address.getStreetName()) && patientHouseNumber.equals(hl7Address.getStreetName())) {
-                        return;
-                    }
-
-                    patientAddress.setStreet(hl7Address.getStreetName());
-                    patientAddress.setHouseNumber(hl7Address.getHouseNumber());
-                    patient.setAddress(patientAddress);
-                    onkostarApi.savePatient(patient);
-                });
-            }
+            analyze(extractPid(hl7Message), ticket);
         } catch (HL7Exception e) {
             logger.error("Kann HL7 Nachricht nicht verarbeiten", e);
         } catch (Exception e) {
             logger.error("Kann die Anschrift des Patienten nicht aus HL7-Nachricht aktualisieren", e);
+        } finally {
+            patientLocks.releaseTicket(ticket);
         }
 
     }
 
-    private PipeParser getPipeParser(String hl7version) {
-        HapiContext context = new DefaultHapiContext(Executors.newCachedThreadPool());
-        CanonicalModelClassFactory mcf = new CanonicalModelClassFactory(hl7version);
-        context.setModelClassFactory(mcf);
-        context.setValidationContext(new OnkostarValidationContext());
-        return context.getPipeParser();
+    /// Extracts the PID data of the message, used by [Hl7BatchReplayService] to choose the worker by patient
+    PidData extractPid(Hl7Message hl7Message) throws HL7Exception {
+        var start = System.nanoTime();
+        var pidData = pidExtractor.extract(hl7Message);
+        metrics.record(Stage.PID_EXTRACTION, start);
+        return pidData;
+    }
+
+    /// Analyzes PID data already extracted using [#extractPid(Hl7Message)], so the message is not scanned twice
+    void analyze(PidData pidData) {
+        var ticket = patientLocks.acquireTicket();
+        try {
+            analyze(pidData, ticket);
+        } catch (Exception e) {
+            logger.error("Kann die Anschrift des Patienten nicht aus HL7-Nachricht aktualisieren", e);
+        } finally {
+            patientLocks.releaseTicket(ticket);
+        }
     }
 
-    private Optional<Patient> getRelatedPatient(Hl7Message hl7Message) throws HL7Exception {
-        PipeParser pipeParser = getPipeParser(hl7Message.getHl7Version());
-        var message = pipeParser.parse(hl7Message.getMessage());
-        var pidStructure = message.get("PID");
-
-        Optional<CX> patientId = Optional.empty();
-
-        switch (HL7VersionEnum.getHl7Version(hl7Message.getHl7Version())) {
-            case V2_3:
-                patientId = Arrays.stream(Wrapper2_3.wrap((ca.uhn.hl7v2.model.v23.segment.PID) pidStructure).getPatientIDInternalID()).findFirst();
-                break;
-            case V2_4:
-                patientId = Arrays.stream(Wrapper2_4.wrap((ca.uhn.hl7v2.model.v24.segment.PID) pidStructure).getPatientIDInternalID()).findFirst();
-                break;
-            case V2_5:
-                patientId = Arrays.stream(Wrapper2_5.wrap((ca.uhn.hl7v2.model.v25.segment.PID) pidStructure).getPatientIDInternalID()).findFirst();
-                break;
-            case V2_6:
-                patientId = Arrays.stream(Wrapper2_6.wrap((ca.uhn.hl7v2.model.v26.segment.PID) pidStructure).getPatientIDInternalID()).findFirst();
-                break;
+    private void analyze(PidData pidData, long ticket) {
+        var hl7AddressOption = addressSelector.select(pidData.getAddresses(), pidData.getEncodingCharacters());
+        if (hl7AddressOption.isEmpty()) {
+            metrics.count(Outcome.SKIPPED);
+            return;
         }
 
-        if (patientId.isPresent()) {
-            var patient = this.onkostarApi.getPatient(patientId.get().getID().getValue());
-            if (null != patient) {
-                return Optional.of(patient);
-            }
-            logger.warn("Kein Patient für '{}' gefunden", patientId.get().getID().getValue());
-            return Optional.empty();
+        var patientId = pidData.getPatientId();
+        if (patientId.isEmpty()) {
+            logger.warn("Keine passende HL7 Nachricht mit Struktur 'PID'");
+            metrics.count(Outcome.SKIPPED);
+            return;
         }
 
-        logger.warn("Keine passende HL7 Nachricht mit Struktur 'PID'");
-        return Optional.empty();
+        var fingerprint = AddressFingerprintWindow.fingerprint(pidData.getAddresses(), pidData.getEncodingCharacters());
+        var processed = patientLocks.runIfLatest(
+                patientId.get(),
+                ticket,
+                () -> updateAddress(patientId.get(), hl7AddressOption.get(), fingerprint)
+        );
+        if (!processed) {
+            logger.debug("Neuere HL7 Nachricht für '{}' vorhanden, Nachricht wird übersprungen", patientId.get());
+            metrics.count(Outcome.SKIPPED);
+        }
     }
 
-    private List<String> getAddressList(Hl7Message hl7Message) throws HL7Exception {
-        PipeParser pipeParser = getPipeParser(hl7Message.getHl7Version());
-        var message = pipeParser.parse(hl7Message.getMessage());
-        var pidStructure = message.get("PID");
-        switch (HL7VersionEnum.getHl7Version(hl7Message.getHl7Version())) {
-            case V2_3:
-                return Arrays.stream(((ca.uhn.hl7v2.model.v23.segment.PID) pidStructure).getPatientAddress()).map((xad -> {
-                            try {
-                                return xad.encode();
-                            } catch (HL7Exception e) {
-                                return null;
-                            }
-                        }))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-            case V2_4:
-                return Arrays.stream(((ca.uhn.hl7v2.model.v24.segment.PID) pidStructure).getPatientAddress()).map((xad -> {
-                            try {
-                                return xad.encode();
-                            } catch (HL7Exception e) {
-                                return null;
-                            }
-                        }))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-            case V2_5:
-                return Arrays.stream(((ca.uhn.hl7v2.model.v25.segment.PID) pidStructure).getPatientAddress()).map((xad -> {
-                            try {
-                                return xad.encode();
-                            } catch (HL7Exception e) {
-                                return null;
-                            }
-                        }))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-            case V2_6:
-                return Arrays.stream(((ca.uhn.hl7v2.model.v26.segment.PID) pidStructure).getPatientAddress()).map((xad -> {
-                            try {
-                                return xad.encode();
-                            } catch (HL7Exception e) {
-                                return null;
-                            }
-                        }))
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
+    private void updateAddress(String patientId, Address hl7Address, long fingerprint) {
+        // Checked while holding the patient lock, so a skipped message still supersedes older ones
+        if (fingerprintWindow.contains(patientId, fingerprint)) {
+            logger.debug("Anschrift für '{}' wurde bereits übernommen, Nachricht wird übersprungen", patientId);
+            metrics.count(Outcome.SKIPPED);
+            return;
+        }
+
+        var start = System.nanoTime();
+        var patient = patientLookupCache.getPatient(patientId);
+        metrics.record(Stage.PATIENT_LOOKUP, start);
+        if (null == patient) {
+            logger.warn("Kein Patient für '{}' gefunden", patientId);
+            metrics.count(Outcome.PATIENT_NOT_FOUND);
+            return;
+        }
+
+        var patientAddress = patient.getAddress();
+        if (null == patientAddress) {
+            metrics.count(Outcome.SKIPPED);
+            return;
+        }
+
+        start = System.nanoTime();
+        var streetAddress = streetAddressCache.split(hl7Address);
+        metrics.record(Stage.SPLIT, start);
+        if (streetAddress.getHouseNumber().isEmpty()) {
+            metrics.countUnparsableAddress();
+        }
+
+        start = System.nanoTime();
+        var changed = addressChangeDetector.hasChanged(patientAddress, streetAddress.getStreetName(), streetAddress.getHouseNumber());
+        metrics.record(Stage.DIFF, start);
+        if (!changed) {
+            fingerprintWindow.put(patientId, fingerprint);
+            metrics.countSkippedWrite();
+            metrics.count(Outcome.SKIPPED);
+            return;
         }
 
-        logger.warn("Keine passende HL7 Nachricht mit Struktur 'PID'");
-        return List.of();
+        // The cached patient must not reflect the change before it has been saved
+        patientLookupCache.evictPatient(patientId);
+        patientAddress.setStreet(streetAddress.getStreetName());
+        patientAddress.setHouseNumber(streetAddress.getHouseNumber());
+        patient.setAddress(patientAddress);
+
+        start = System.nanoTime();
+        // With write-behind the patient is only queued here, so the address is known to be applied once saved
+        patientWriter.save(patient, () -> {
+            metrics.countPerformedWrite();
+            fingerprintWindow.put(patientId, fingerprint);
+            patientLookupCache.putPatient(patientId, patient);
+        });
+        metrics.record(Stage.SAVE, start);
+        metrics.count(Outcome.SAVED);
     }
 
 }
@@ -28,4 +28,9 @@ public interface Hl7AddressSplitter {
 
     Address split(String hl7address);
 
+    /// Splits an XAD encoded using the given MSH-1 and MSH-2 encoding characters
+    default Address split(String hl7address, String encodingCharacters) {
+        return split(hl7address);
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/// Reads HL7 messages one by one from an HL7 batch file or a file of concatenated messages.
+///
+/// Every `MSH` segment starts a new message. File and batch header and trailer segments (`FHS`, `BHS`, `BTS`, `FTS`)
+/// and empty lines are skipped. Segments are terminated by `\r`, `\n` or `\r\n` and joined using `\r`.
+/// Only the current message is kept in memory.
+final class Hl7BatchReader implements Iterator<String>, Closeable {
+
+    private final BufferedReader reader;
+
+    private String nextSegment;
+
+    private String nextMessage;
+
+    Hl7BatchReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null == nextMessage) {
+            nextMessage = readMessage();
+        }
+        return null != nextMessage;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        var result = nextMessage;
+        nextMessage = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /// Returns the version ID (MSH-12) of the given message or `null` if there is none
+    static String getVersion(String message) {
+        if (null == message || message.length() < 8 || !message.startsWith("MSH")) {
+            return null;
+        }
+        var fieldSeparator = message.charAt(3);
+        var componentSeparator = message.charAt(4);
+        var position = 3;
+        // MSH-1 is the field separator itself, so MSH-12 starts after the 11th separator
+        for (var i = 0; i < 11; i++) {
+            position = message.indexOf(fieldSeparator, position);
+            if (position < 0) {
+                return null;
+            }
+            position++;
+        }
+        var end = position;
+        while (end < message.length()) {
+            var c = message.charAt(end);
+            if (c == fieldSeparator || c == componentSeparator || c == '\r' || c == '\n') {
+                break;
+            }
+            end++;
+        }
+        return end > position ? message.substring(position, end) : null;
+    }
+
+    private String readMessage() {
+        try {
+            var segment = null != nextSegment ? nextSegment : reader.readLine();
+            nextSegment = null;
+            while (null != segment && !segment.startsWith("MSH")) {
+                segment = reader.readLine();
+            }
+            if (null == segment) {
+                return null;
+            }
+
+            var message = new StringBuilder(1024).append(segment);
+            while (null != (segment = reader.readLine())) {
+                if (segment.startsWith("MSH")) {
+                    nextSegment = segment;
+                    break;
+                }
+                if (segment.isBlank() || isBatchSegment(segment)) {
+                    continue;
+                }
+                message.append('\r').append(segment);
+            }
+            return message.append('\r').toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isBatchSegment(String segment) {
+        return segment.startsWith("FHS") || segment.startsWith("BHS") || segment.startsWith("BTS") || segment.startsWith("FTS");
+    }
+
+}
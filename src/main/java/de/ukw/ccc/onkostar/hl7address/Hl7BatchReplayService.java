@@ -0,0 +1,263 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.HL7Exception;
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Replays archived HL7 messages from batch files using the same extraction and update path as [Hl7AddressPlugin].
+///
+/// The file is read incrementally. Relevant messages are distributed to the configured number of worker threads
+/// by patient, so messages of the same patient are processed in file order and the latest one wins.
+/// Each worker uses a bounded queue, so reading waits if the workers fall behind.
+/// A replay can be started using the JMX operation `replay` of `de.ukw.ccc.onkostar.hl7address:type=Hl7BatchReplay`.
+@Component
+public class Hl7BatchReplayService implements Hl7BatchReplayMXBean, InitializingBean, DisposableBean {
+
+    static final String PARALLELISM_KEY = "hl7address.replay.parallelism";
+
+    static final String CHARSET_KEY = "hl7address.replay.charset";
+
+    private static final int QUEUE_CAPACITY = 1_000;
+
+    private static final Runnable END_OF_REPLAY = () -> {
+    };
+
+    private final Logger logger = LoggerFactory.getLogger(Hl7BatchReplayService.class);
+
+    private final IOnkostarApi onkostarApi;
+
+    private final Hl7AddressPlugin hl7AddressPlugin;
+
+    private final int parallelism;
+
+    private final Charset charset;
+
+    private ObjectName objectName;
+
+    public Hl7BatchReplayService(
+            final IOnkostarApi onkostarApi,
+            final Hl7AddressPlugin hl7AddressPlugin,
+            final PluginConfiguration configuration
+    ) {
+        this.onkostarApi = onkostarApi;
+        this.hl7AddressPlugin = hl7AddressPlugin;
+        this.parallelism = Math.max(1, configuration.getInt(PARALLELISM_KEY, Runtime.getRuntime().availableProcessors()));
+        this.charset = Charset.forName(configuration.getString(CHARSET_KEY, "UTF-8"));
+    }
+
+    @Override
+    public String replay(String file) {
+        try {
+            return replay(Path.of(file)).toString();
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Kann HL7 Datei '{}' nicht verarbeiten", file, e);
+            return "Fehler: " + e.getMessage();
+        }
+    }
+
+    public synchronized Result replay(Path file) throws IOException {
+        var start = System.nanoTime();
+        var readCount = 0L;
+        var relevantCount = 0L;
+        var analyzedCount = new LongAdder();
+
+        List<BlockingQueue<Runnable>> queues = new ArrayList<>(parallelism);
+        var workers = new Thread[parallelism];
+        for (var i = 0; i < parallelism; i++) {
+            var queue = new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY);
+            queues.add(queue);
+            workers[i] = new Thread(() -> runWorker(queue), "hl7address-replay-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        logger.info("Verarbeite HL7 Datei '{}' mit {} Threads", file, parallelism);
+        try (var reader = new Hl7BatchReader(Files.newBufferedReader(file, charset))) {
+            while (reader.hasNext()) {
+                var message = reader.next();
+                readCount++;
+
+                var hl7Message = new Hl7Message(onkostarApi);
+                hl7Message.setHl7Version(Hl7BatchReader.getVersion(message));
+                hl7Message.setMessage(message);
+                if (!hl7AddressPlugin.isRelevantForAnalyzer(hl7Message)) {
+                    continue;
+                }
+                relevantCount++;
+
+                // Extracted once here, so the lane uses the same patient id as the analysis
+                PidData pidData;
+                try {
+                    pidData = hl7AddressPlugin.extractPid(hl7Message);
+                } catch (HL7Exception e) {
+                    logger.error("Kann HL7 Nachricht {} aus '{}' nicht verarbeiten", readCount, file, e);
+                    continue;
+                }
+                put(queues.get(lane(pidData)), () -> {
+                    hl7AddressPlugin.analyze(pidData);
+                    analyzedCount.increment();
+                });
+            }
+        } finally {
+            for (var queue : queues) {
+                put(queue, END_OF_REPLAY);
+            }
+            for (var worker : workers) {
+                join(worker);
+            }
+        }
+
+        var result = new Result(readCount, relevantCount, analyzedCount.sum(), System.nanoTime() - start);
+        logger.info("HL7 Datei '{}' verarbeitet: {}", file, result);
+        return result;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=Hl7BatchReplay");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.objectName = name;
+        } catch (JMException e) {
+            logger.warn("Kann HL7 Replay nicht über JMX bereitstellen", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (null == objectName) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.debug("Kann HL7 Replay '{}' nicht entfernen", objectName, e);
+        }
+    }
+
+    /// Messages of the same patient always use the same worker
+    private int lane(PidData pidData) {
+        if (pidData.getPatientId().isEmpty()) {
+            return 0;
+        }
+        var hash = pidData.getPatientId().get().hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), parallelism);
+    }
+
+    private static void runWorker(BlockingQueue<Runnable> queue) {
+        try {
+            Runnable task;
+            while ((task = queue.take()) != END_OF_REPLAY) {
+                task.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Runnable> queue, Runnable task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Verarbeitung abgebrochen", e);
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static final class Result {
+        private final long readCount;
+        private final long relevantCount;
+        private final long analyzedCount;
+        private final long durationNanos;
+
+        Result(long readCount, long relevantCount, long analyzedCount, long durationNanos) {
+            this.readCount = readCount;
+            this.relevantCount = relevantCount;
+            this.analyzedCount = analyzedCount;
+            this.durationNanos = durationNanos;
+        }
+
+        public long getReadCount() {
+            return readCount;
+        }
+
+        public long getRelevantCount() {
+            return relevantCount;
+        }
+
+        public long getAnalyzedCount() {
+            return analyzedCount;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d Nachrichten gelesen, %d relevant, %d verarbeitet in %d ms",
+                    readCount,
+                    relevantCount,
+                    analyzedCount,
+                    durationNanos / 1_000_000
+            );
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/// Decides whether an HL7 message has to be analyzed by scanning the raw ER7 message only.
+///
+/// A message is relevant if its message type and trigger event (MSH-9) are contained in the configured
+/// list of message types and it contains a non-empty PID-11. Use `*` to accept all message types.
+/// Messages not starting with an MSH segment are passed on, so the analyzer can report them.
+@Component
+public class Hl7MessageFilter {
+
+    static final String RELEVANT_MESSAGE_TYPES_KEY = "hl7address.relevant-message-types";
+
+    static final String DEFAULT_RELEVANT_MESSAGE_TYPES = "ADT^A01,ADT^A04,ADT^A08,ADT^A28,ADT^A31";
+
+    private static final String ALL_MESSAGE_TYPES = "*";
+
+    private static final int MESSAGE_TYPE_FIELD = 9;
+
+    private static final int PATIENT_ADDRESS_FIELD = 11;
+
+    private final Set<String> relevantMessageTypes;
+
+    public Hl7MessageFilter(final PluginConfiguration configuration) {
+        this.relevantMessageTypes = Arrays.stream(configuration.getString(RELEVANT_MESSAGE_TYPES_KEY, DEFAULT_RELEVANT_MESSAGE_TYPES).split(","))
+                .map(String::trim)
+                .filter(messageType -> !messageType.isEmpty())
+                .map(String::toUpperCase)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean isRelevant(String message) {
+        if (null == message || message.length() < 8 || !message.startsWith("MSH")) {
+            return true;
+        }
+
+        var fieldSeparator = message.charAt(3);
+        var componentSeparator = message.charAt(4);
+        var repetitionSeparator = message.charAt(5);
+        var subcomponentSeparator = message.charAt(7);
+
+        var mshEnd = segmentEnd(message, 0);
+        if (!relevantMessageTypes.contains(ALL_MESSAGE_TYPES)) {
+            // MSH-1 is the field separator itself, so MSH-9 starts after the 8th separator
+            var start = fieldStart(message, fieldSeparator, 3, mshEnd, MESSAGE_TYPE_FIELD - 1);
+            var end = fieldEnd(message, fieldSeparator, start, mshEnd);
+            var messageTypeEnd = indexOf(message, componentSeparator, start, end);
+            var triggerEventEnd = messageTypeEnd < end ? indexOf(message, componentSeparator, messageTypeEnd + 1, end) : end;
+            var messageType = message.substring(start, messageTypeEnd) + "^"
+                    + (messageTypeEnd < end ? message.substring(messageTypeEnd + 1, triggerEventEnd) : "");
+            if (!relevantMessageTypes.contains(messageType.toUpperCase())) {
+                return false;
+            }
+        }
+
+        var segmentStart = mshEnd + 1;
+        while (segmentStart < message.length()) {
+            var segmentEnd = segmentEnd(message, segmentStart);
+            if (message.startsWith("PID", segmentStart)
+                    && (segmentEnd == segmentStart + 3 || message.charAt(segmentStart + 3) == fieldSeparator)) {
+                var start = fieldStart(message, fieldSeparator, segmentStart + 3, segmentEnd, PATIENT_ADDRESS_FIELD);
+                var end = fieldEnd(message, fieldSeparator, start, segmentEnd);
+                for (var i = start; i < end; i++) {
+                    var c = message.charAt(i);
+                    if (c != componentSeparator && c != repetitionSeparator && c != subcomponentSeparator && c != ' ') {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            segmentStart = segmentEnd + 1;
+        }
+
+        return false;
+    }
+
+    private static int segmentEnd(String message, int start) {
+        var end = start;
+        while (end < message.length() && message.charAt(end) != '\r' && message.charAt(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    /// Returns the position after the given number of field separators starting at `position`,
+    /// or the segment end if there are not enough fields
+    private static int fieldStart(String message, char fieldSeparator, int position, int segmentEnd, int separators) {
+        for (var i = 0; i < separators; i++) {
+            position = indexOf(message, fieldSeparator, position, segmentEnd);
+            if (position >= segmentEnd) {
+                return segmentEnd;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private static int fieldEnd(String message, char fieldSeparator, int start, int segmentEnd) {
+        return indexOf(message, fieldSeparator, start, segmentEnd);
+    }
+
+    private static int indexOf(String message, char c, int start, int end) {
+        var index = message.indexOf(c, start);
+        return index < 0 || index > end ? end : index;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Lock-free histogram of durations using power of two buckets.
+/// Percentiles are reported as the upper bound of the matching bucket.
+final class LatencyHistogram implements StageMetricsMXBean {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        var value = Math.max(0, nanos);
+        buckets.incrementAndGet(value == 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long getMeanNanos() {
+        var n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / n;
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long get50thPercentileNanos() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long get99thPercentileNanos() {
+        return percentile(0.99);
+    }
+
+    long percentile(double quantile) {
+        var counts = new long[buckets.length()];
+        var total = 0L;
+        for (var i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        var rank = (long) Math.ceil(quantile * total);
+        var cumulative = 0L;
+        for (var i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << (bucket + 1)) - 1;
+    }
+
+}
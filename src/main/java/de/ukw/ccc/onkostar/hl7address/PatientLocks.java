@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Serializes the processing of HL7 messages for the same patient using striped locks.
+///
+/// Each message gets a ticket when it arrives, before it is parsed. The latest ticket applied or waiting
+/// for a patient is remembered, so an older message is skipped even if it finished parsing after a newer
+/// one. Remembered tickets are dropped once no older message is still in flight.
+@Component
+public class PatientLocks {
+
+    private static final int CLEANUP_INTERVAL = 1024;
+
+    private final ReentrantLock[] stripes;
+
+    private final int mask;
+
+    private long ticketSequence;
+
+    private final ConcurrentSkipListSet<Long> ticketsInFlight = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentHashMap<String, Long> latestTickets = new ConcurrentHashMap<>();
+
+    private final LongAdder supersededCount = new LongAdder();
+
+    public PatientLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    PatientLocks(int minStripes) {
+        var stripeCount = minStripes <= 1 ? 1 : Integer.highestOneBit(minStripes - 1) << 1;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    /// Hands out the ticket for a newly arrived message. Each ticket must be released using
+    /// [#releaseTicket(long)] once the message has been processed.
+    public long acquireTicket() {
+        synchronized (ticketsInFlight) {
+            var ticket = ++ticketSequence;
+            ticketsInFlight.add(ticket);
+            return ticket;
+        }
+    }
+
+    public void releaseTicket(long ticket) {
+        ticketsInFlight.remove(ticket);
+        if (ticket % CLEANUP_INTERVAL == 0) {
+            removeObsoleteTickets();
+        }
+    }
+
+    /// Runs the given action with a ticket of its own, see [#runIfLatest(String, long, Runnable)].
+    public boolean runIfLatest(String patientId, Runnable action) {
+        var ticket = acquireTicket();
+        try {
+            return runIfLatest(patientId, ticket, action);
+        } finally {
+            releaseTicket(ticket);
+        }
+    }
+
+    /// Runs the given action while holding the lock for the patient, unless a message for the same
+    /// patient with a newer ticket has been seen.
+    ///
+    /// @return `false` if the action was skipped in favour of a newer message
+    public boolean runIfLatest(String patientId, long ticket, Runnable action) {
+        latestTickets.merge(patientId, ticket, Math::max);
+
+        var lock = stripeFor(patientId);
+        lock.lock();
+        try {
+            if (latestTickets.getOrDefault(patientId, ticket) > ticket) {
+                supersededCount.increment();
+                return false;
+            }
+            action.run();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSupersededCount() {
+        return supersededCount.sum();
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    int getRememberedTicketCount() {
+        return latestTickets.size();
+    }
+
+    void removeObsoleteTickets() {
+        long oldestInFlight;
+        synchronized (ticketsInFlight) {
+            var oldest = ticketsInFlight.ceiling(Long.MIN_VALUE);
+            oldestInFlight = null == oldest ? ticketSequence + 1 : oldest;
+        }
+        latestTickets.values().removeIf(ticket -> ticket < oldestInFlight);
+    }
+
+    private ReentrantLock stripeFor(String patientId) {
+        var hash = patientId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/// Looks up patients by patient id (PID-3) using a bounded, time-expiring cache of the related Onkostar patient.
+///
+/// Known patients are returned from the cache without any lookup. Before a patient is modified, its cached data
+/// is evicted using [#evictPatient(String)], while the mapping to the Onkostar patient id is kept, so the patient
+/// is loaded by that id until the saved patient is cached again using [#putPatient(String, Patient)].
+/// Patient ids without related patient are remembered for a shorter time, so repeated messages for unknown
+/// patients do not require a lookup at all.
+@Component
+public class PatientLookupCache {
+
+    static final String CACHE_SIZE_KEY = "hl7address.patient-cache.size";
+
+    static final String TTL_KEY = "hl7address.patient-cache.ttl-seconds";
+
+    static final String NEGATIVE_TTL_KEY = "hl7address.patient-cache.negative-ttl-seconds";
+
+    private static final int NOT_FOUND = -1;
+
+    private final IOnkostarApi onkostarApi;
+
+    private final int maximumSize;
+
+    private final long ttlNanos;
+
+    private final long negativeTtlNanos;
+
+    private final LongSupplier nanoTime;
+
+    private final LinkedHashMap<String, CachedPatient> entries;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public PatientLookupCache(final IOnkostarApi onkostarApi, final PluginConfiguration configuration) {
+        this(
+                onkostarApi,
+                configuration.getInt(CACHE_SIZE_KEY, 10_000),
+                configuration.getInt(TTL_KEY, 60),
+                configuration.getInt(NEGATIVE_TTL_KEY, 30),
+                System::nanoTime
+        );
+    }
+
+    PatientLookupCache(IOnkostarApi onkostarApi, int maximumSize, int ttlSeconds, int negativeTtlSeconds, LongSupplier nanoTime) {
+        this.onkostarApi = onkostarApi;
+        this.maximumSize = Math.max(0, maximumSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+        this.nanoTime = nanoTime;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPatient> eldest) {
+                return size() > PatientLookupCache.this.maximumSize;
+            }
+        };
+    }
+
+    /// Returns the patient with the given patient id or `null` if there is no such patient
+    public Patient getPatient(String patientId) {
+        if (maximumSize == 0) {
+            return onkostarApi.getPatient(patientId);
+        }
+
+        var entry = get(patientId);
+        if (null != entry) {
+            if (entry.id == NOT_FOUND) {
+                hitCount.increment();
+                return null;
+            }
+            if (null != entry.patient) {
+                hitCount.increment();
+                return entry.patient;
+            }
+            var patient = onkostarApi.getPatient(entry.id);
+            if (null != patient && patientId.equals(patient.getPatientId())) {
+                hitCount.increment();
+                put(patientId, entry.id, patient, ttlNanos);
+                return patient;
+            }
+            synchronized (entries) {
+                entries.remove(patientId);
+            }
+        }
+
+        missCount.increment();
+        var patient = onkostarApi.getPatient(patientId);
+        if (null == patient) {
+            put(patientId, NOT_FOUND, null, negativeTtlNanos);
+        } else if (null != patient.getId()) {
+            put(patientId, patient.getId(), patient, ttlNanos);
+        }
+        return patient;
+    }
+
+    /// Drops the cached data of the patient before it is modified, but keeps the related Onkostar patient id
+    public void evictPatient(String patientId) {
+        if (null == patientId) {
+            return;
+        }
+        synchronized (entries) {
+            var entry = entries.get(patientId);
+            if (null != entry && null != entry.patient) {
+                entries.put(patientId, new CachedPatient(entry.id, null, entry.expiresAt));
+            }
+        }
+    }
+
+    /// Caches the patient after it has been saved
+    public void putPatient(String patientId, Patient patient) {
+        if (maximumSize == 0 || null == patientId || null == patient.getId()) {
+            return;
+        }
+        put(patientId, patient.getId(), patient, ttlNanos);
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private CachedPatient get(String patientId) {
+        synchronized (entries) {
+            var entry = entries.get(patientId);
+            if (null != entry && nanoTime.getAsLong() - entry.expiresAt > 0) {
+                entries.remove(patientId);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void put(String patientId, int id, Patient patient, long ttl) {
+        if (ttl <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(patientId, new CachedPatient(id, patient, nanoTime.getAsLong() + ttl));
+        }
+    }
+
+    private static final class CachedPatient {
+        private final int id;
+        private final Patient patient;
+        private final long expiresAt;
+
+        private CachedPatient(int id, Patient patient, long expiresAt) {
+            this.id = id;
+            this.patient = patient;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
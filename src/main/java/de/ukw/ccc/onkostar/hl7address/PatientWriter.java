@@ -0,0 +1,259 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Saves patients either directly or, if enabled, using a write-behind queue.
+///
+/// Queued patients are saved in batches by a background thread as soon as the batch size is reached
+/// or the flush interval has elapsed. Pending updates of the same patient are merged, so only the latest
+/// one is saved. If the queue is full, callers wait until there is space again.
+/// All pending updates are saved on shutdown.
+///
+/// A callback passed to [#save(Patient, Runnable)] runs once the patient has actually been saved. It is
+/// dropped if saving fails or if a newer update of the same patient replaced the pending one.
+@Component
+public class PatientWriter implements DisposableBean {
+
+    static final String ENABLED_KEY = "hl7address.write-behind.enabled";
+
+    static final String BATCH_SIZE_KEY = "hl7address.write-behind.batch-size";
+
+    static final String FLUSH_INTERVAL_KEY = "hl7address.write-behind.flush-interval-ms";
+
+    static final String CAPACITY_KEY = "hl7address.write-behind.capacity";
+
+    private final Logger logger = LoggerFactory.getLogger(PatientWriter.class);
+
+    private final IOnkostarApi onkostarApi;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final int capacity;
+
+    private static final Runnable NO_CALLBACK = () -> {
+    };
+
+    private final LinkedHashMap<Integer, PendingSave> pendingPatients = new LinkedHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition batchAvailable = lock.newCondition();
+
+    private final Condition spaceAvailable = lock.newCondition();
+
+    private final Thread flusher;
+
+    private boolean shutdown;
+
+    /// Set once the final flush on shutdown has saved all pending patients
+    private boolean closed;
+
+    public PatientWriter(final IOnkostarApi onkostarApi, final PluginConfiguration configuration) {
+        this.onkostarApi = onkostarApi;
+        this.enabled = configuration.getBoolean(ENABLED_KEY, false);
+        this.batchSize = Math.max(1, configuration.getInt(BATCH_SIZE_KEY, 100));
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, configuration.getInt(FLUSH_INTERVAL_KEY, 1000)));
+        this.capacity = Math.max(1, configuration.getInt(CAPACITY_KEY, 10_000));
+
+        if (enabled) {
+            this.flusher = new Thread(this::runFlusher, "hl7address-patient-writer");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public void save(Patient patient) {
+        save(patient, NO_CALLBACK);
+    }
+
+    /// Saves the patient and runs `onSaved` after it has been saved successfully
+    public void save(Patient patient, Runnable onSaved) {
+        Integer patientId = patient.getId();
+        if (!enabled || null == patientId) {
+            onkostarApi.savePatient(patient);
+            onSaved.run();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!closed) {
+                if (!pendingPatients.containsKey(patientId)) {
+                    // On shutdown the queue may exceed its capacity, as the final flush saves all pending patients
+                    while (pendingPatients.size() >= capacity && !shutdown) {
+                        spaceAvailable.awaitUninterruptibly();
+                    }
+                }
+                // Woken by destroy(), the final flush may already have run
+                if (!closed) {
+                    pendingPatients.put(patientId, new PendingSave(patient, onSaved));
+                    if (pendingPatients.size() >= batchSize) {
+                        batchAvailable.signal();
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Nothing is pending any more, so the patient cannot be overwritten by an older update
+        onkostarApi.savePatient(patient);
+        onSaved.run();
+    }
+
+    /// Saves all pending patients within the calling thread
+    public void flush() {
+        List<PendingSave> batch;
+        while (!(batch = takeBatch()).isEmpty()) {
+            saveAll(batch);
+        }
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingPatients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (null == flusher) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            shutdown = true;
+            batchAvailable.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+
+        while (true) {
+            List<PendingSave> batch;
+            lock.lock();
+            try {
+                batch = takeBatch();
+                if (batch.isEmpty()) {
+                    closed = true;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            saveAll(batch);
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            List<PendingSave> batch;
+            lock.lock();
+            try {
+                var remaining = flushIntervalNanos;
+                while (!shutdown && pendingPatients.size() < batchSize && remaining > 0) {
+                    remaining = batchAvailable.awaitNanos(remaining);
+                }
+                if (shutdown && pendingPatients.isEmpty()) {
+                    return;
+                }
+                batch = takeBatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            saveAll(batch);
+        }
+    }
+
+    private List<PendingSave> takeBatch() {
+        lock.lock();
+        try {
+            var result = new ArrayList<PendingSave>(Math.min(batchSize, pendingPatients.size()));
+            var iterator = pendingPatients.values().iterator();
+            while (iterator.hasNext() && result.size() < batchSize) {
+                result.add(iterator.next());
+                iterator.remove();
+            }
+            if (!result.isEmpty()) {
+                spaceAvailable.signalAll();
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void saveAll(List<PendingSave> pendingSaves) {
+        for (var pendingSave : pendingSaves) {
+            try {
+                onkostarApi.savePatient(pendingSave.patient);
+            } catch (Exception e) {
+                logger.error("Kann Patient '{}' nicht speichern", pendingSave.patient.getPatientId(), e);
+                continue;
+            }
+            pendingSave.onSaved.run();
+        }
+    }
+
+    private static final class PendingSave {
+        private final Patient patient;
+        private final Runnable onSaved;
+
+        private PendingSave(Patient patient, Runnable onSaved) {
+            this.patient = patient;
+            this.onSaved = onSaved;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.Group;
+import ca.uhn.hl7v2.model.Segment;
+import ca.uhn.hl7v2.model.Structure;
+import ca.uhn.hl7v2.model.Type;
+import ca.uhn.hl7v2.parser.EncodingCharacters;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.util.Terser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// Reads PID-3 and PID-11 from a parsed message independent of the HL7 version.
+/// Field positions are the same in all HL7 v2 versions, so typed segments of 2.3 to 2.6 and generic segments
+/// of all other versions (e.g. 2.2, 2.5.1, 2.7) are read by field number without casts to version specific classes.
+final class PidAccessor {
+
+    private static final String PID = "PID";
+
+    private static final int PATIENT_ID_FIELD = 3;
+
+    private static final int PATIENT_ADDRESS_FIELD = 11;
+
+    private PidAccessor() {
+        // No content
+    }
+
+    /// Returns the PID data of the first PID segment in the message or its groups
+    static PidData read(Group message) throws HL7Exception {
+        var pid = findPid(message);
+        if (null == pid) {
+            return null;
+        }
+
+        // Encoding characters are read from MSH-1 and MSH-2 directly, since generic messages cannot provide them
+        var msh = (Segment) message.get("MSH");
+        var fieldSeparator = Terser.get(msh, 1, 0, 1, 1);
+        var encodingCharacters = Terser.get(msh, 2, 0, 1, 1);
+        if (null == fieldSeparator || fieldSeparator.isEmpty() || null == encodingCharacters) {
+            return PidData.of(getPatientId(pid), getAddresses(pid, EncodingCharacters.defaultInstance()));
+        }
+        return PidData.of(
+                getPatientId(pid),
+                getAddresses(pid, new EncodingCharacters(fieldSeparator.charAt(0), encodingCharacters)),
+                fieldSeparator.charAt(0) + encodingCharacters
+        );
+    }
+
+    private static String getPatientId(Segment pid) throws HL7Exception {
+        var patientIds = pid.getField(PATIENT_ID_FIELD);
+        if (patientIds.length == 0) {
+            return null;
+        }
+        return Terser.getPrimitive(patientIds[0], 1, 1).getValue();
+    }
+
+    private static List<String> getAddresses(Segment pid, EncodingCharacters encodingCharacters) throws HL7Exception {
+        var xads = pid.getField(PATIENT_ADDRESS_FIELD);
+        var result = new ArrayList<String>(xads.length);
+        for (Type xad : xads) {
+            result.add(PipeParser.encode(xad, encodingCharacters));
+        }
+        return result;
+    }
+
+    private static Segment findPid(Group group) throws HL7Exception {
+        for (String name : group.getNames()) {
+            Structure[] structures = group.getAll(name);
+            if (structures.length == 0) {
+                continue;
+            }
+            if (structures[0] instanceof Segment) {
+                if (name.startsWith(PID) && PID.equals(structures[0].getName())) {
+                    return (Segment) structures[0];
+                }
+            } else {
+                for (Structure structure : structures) {
+                    var pid = findPid((Group) structure);
+                    if (null != pid) {
+                        return pid;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+}
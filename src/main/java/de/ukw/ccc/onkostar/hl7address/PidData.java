@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import java.util.List;
+import java.util.Optional;
+
+/// Immutable result of a single extraction of the PID segment:
+/// the first patient identifier (PID-3), all encoded XAD repetitions (PID-11)
+/// and the encoding characters (MSH-1 and MSH-2) used to encode them
+public final class PidData {
+
+    private static final PidData EMPTY = new PidData(null, List.of(), XadDecoder.DEFAULT_ENCODING_CHARACTERS);
+
+    private final String patientId;
+
+    private final List<String> addresses;
+
+    private final String encodingCharacters;
+
+    private PidData(String patientId, List<String> addresses, String encodingCharacters) {
+        this.patientId = patientId;
+        this.addresses = List.copyOf(addresses);
+        this.encodingCharacters = encodingCharacters;
+    }
+
+    public static PidData of(String patientId, List<String> addresses) {
+        return new PidData(patientId, addresses, XadDecoder.DEFAULT_ENCODING_CHARACTERS);
+    }
+
+    public static PidData of(String patientId, List<String> addresses, String encodingCharacters) {
+        return new PidData(patientId, addresses, encodingCharacters);
+    }
+
+    public static PidData empty() {
+        return EMPTY;
+    }
+
+    public Optional<String> getPatientId() {
+        return Optional.ofNullable(patientId);
+    }
+
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    public String getEncodingCharacters() {
+        return encodingCharacters;
+    }
+
+}
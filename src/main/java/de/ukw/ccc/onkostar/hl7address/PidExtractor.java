@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.HL7Exception;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/// Extracts all PID data required to update the patient address from an HL7 message.
+/// Usual messages are scanned directly, all others are parsed once using HAPI.
+@Component
+public class PidExtractor {
+
+    private final Logger logger = LoggerFactory.getLogger(PidExtractor.class);
+
+    private final PipeParserRegistry pipeParserRegistry;
+
+    private final AnalyzerMetrics metrics;
+
+    public PidExtractor(final PipeParserRegistry pipeParserRegistry, final AnalyzerMetrics metrics) {
+        this.pipeParserRegistry = pipeParserRegistry;
+        this.metrics = metrics;
+    }
+
+    public PidData extract(Hl7Message hl7Message) throws HL7Exception {
+        var pidData = Er7PidScanner.scan(hl7Message.getMessage());
+        if (null != pidData) {
+            return pidData;
+        }
+        return extractUsingHapi(hl7Message);
+    }
+
+    PidData extractUsingHapi(Hl7Message hl7Message) throws HL7Exception {
+        var start = System.nanoTime();
+        var message = pipeParserRegistry.parse(hl7Message.getHl7Version(), hl7Message.getMessage());
+        metrics.record(AnalyzerMetrics.Stage.PARSE, start);
+
+        var pidData = PidAccessor.read(message);
+        if (null != pidData) {
+            return pidData;
+        }
+
+        logger.warn("Keine passende HL7 Nachricht mit Struktur 'PID'");
+        return PidData.empty();
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import ca.uhn.hl7v2.DefaultHapiContext;
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.model.Message;
+import ca.uhn.hl7v2.parser.CanonicalModelClassFactory;
+import ca.uhn.hl7v2.parser.PipeParser;
+import ca.uhn.hl7v2.validation.impl.ValidationContextFactory;
+import de.itc.onkostar.api.hl7.utils.OnkostarValidationContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Holds one pre-built and thread-safe PipeParser per HL7 version.
+/// All parsers share a single bounded executor instead of creating a new thread pool per message.
+///
+/// In parse mode `partial` only the MSH and the first PID segment are handed to HAPI and validation is disabled,
+/// so the parsing cost does not depend on other segments like OBX or Z-segments.
+@Component
+public class PipeParserRegistry implements DisposableBean {
+
+    static final String PARSE_MODE_KEY = "hl7address.hapi.parse-mode";
+
+    static final String PARSE_MODE_FULL = "full";
+
+    static final String PARSE_MODE_PARTIAL = "partial";
+
+    static final List<String> SUPPORTED_VERSIONS = List.of("2.3", "2.4", "2.5", "2.6");
+
+    private static final int MAX_EXECUTOR_THREADS = 2;
+
+    private final ThreadPoolExecutor executorService;
+
+    private final ConcurrentMap<String, PipeParser> pipeParsers = new ConcurrentHashMap<>();
+
+    private final boolean partial;
+
+    public PipeParserRegistry(final PluginConfiguration configuration) {
+        this(configuration.getString(PARSE_MODE_KEY, PARSE_MODE_FULL));
+    }
+
+    PipeParserRegistry(String parseMode) {
+        if (PARSE_MODE_PARTIAL.equalsIgnoreCase(parseMode.trim())) {
+            this.partial = true;
+        } else if (PARSE_MODE_FULL.equalsIgnoreCase(parseMode.trim())) {
+            this.partial = false;
+        } else {
+            throw new IllegalArgumentException(String.format("Unbekannter Parse-Modus '%s'", parseMode));
+        }
+
+        var threadCount = new AtomicInteger();
+        this.executorService = new ThreadPoolExecutor(
+                MAX_EXECUTOR_THREADS,
+                MAX_EXECUTOR_THREADS,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    var thread = new Thread(runnable, "hl7address-hapi-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.executorService.allowCoreThreadTimeOut(true);
+
+        SUPPORTED_VERSIONS.forEach(hl7version -> pipeParsers.put(hl7version, createPipeParser(hl7version, executorService, partial)));
+    }
+
+    public PipeParser getPipeParser(String hl7version) {
+        if (null == hl7version) {
+            throw new IllegalArgumentException("Keine HL7-Version angegeben");
+        }
+        return pipeParsers.computeIfAbsent(hl7version, version -> createPipeParser(version, executorService, partial));
+    }
+
+    /// Parses the message using the PipeParser for the given HL7 version.
+    /// In parse mode `partial` all segments except MSH and the first PID are dropped before parsing.
+    public Message parse(String hl7version, String message) throws HL7Exception {
+        var pipeParser = getPipeParser(hl7version);
+        return pipeParser.parse(partial ? restrictToMshAndPid(message) : message);
+    }
+
+    boolean isPartial() {
+        return partial;
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdown();
+    }
+
+    static PipeParser createPipeParser(String hl7version, ExecutorService executorService) {
+        return createPipeParser(hl7version, executorService, false);
+    }
+
+    static PipeParser createPipeParser(String hl7version, ExecutorService executorService, boolean partial) {
+        HapiContext context = new DefaultHapiContext(executorService);
+        CanonicalModelClassFactory mcf = new CanonicalModelClassFactory(hl7version);
+        context.setModelClassFactory(mcf);
+        if (partial) {
+            // Validation rules of OnkostarValidationContext do not apply to MSH-9, PID-3 or PID-11
+            context.setValidationContext(ValidationContextFactory.noValidation());
+            context.getParserConfiguration().setValidating(false);
+        } else {
+            context.setValidationContext(new OnkostarValidationContext());
+        }
+        return context.getPipeParser();
+    }
+
+    /// Returns a message containing the MSH segment and the first PID segment only, separated by `\r`.
+    /// If there is no MSH segment at the start, the message is returned unchanged to let HAPI report the error.
+    static String restrictToMshAndPid(String message) {
+        if (null == message || !message.startsWith("MSH") || message.length() < 4) {
+            return message;
+        }
+        var fieldSeparator = message.charAt(3);
+        var mshEnd = segmentEnd(message, 0);
+
+        var segmentStart = mshEnd;
+        while (segmentStart < message.length()) {
+            var c = message.charAt(segmentStart);
+            if (c == '\r' || c == '\n') {
+                segmentStart++;
+                continue;
+            }
+            var segmentEnd = segmentEnd(message, segmentStart);
+            if (message.startsWith("PID", segmentStart)
+                    && (segmentEnd == segmentStart + 3 || message.charAt(segmentStart + 3) == fieldSeparator)) {
+                return message.substring(0, mshEnd) + '\r' + message.substring(segmentStart, segmentEnd) + '\r';
+            }
+            segmentStart = segmentEnd;
+        }
+        return message.substring(0, mshEnd) + '\r';
+    }
+
+    private static int segmentEnd(String message, int start) {
+        var end = start;
+        while (end < message.length() && message.charAt(end) != '\r' && message.charAt(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+}
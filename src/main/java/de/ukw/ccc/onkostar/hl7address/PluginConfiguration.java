@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/// Plugin settings from `onkostar-config.properties`.
+/// Each setting can be overridden by a system property of the same name.
+@Component
+public class PluginConfiguration {
+
+    static final String CONFIG_FILE = "onkostar-config.properties";
+
+    private final Logger logger = LoggerFactory.getLogger(PluginConfiguration.class);
+
+    private final Properties properties;
+
+    public PluginConfiguration() {
+        this.properties = new Properties();
+        try (var inputStream = PluginConfiguration.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (null != inputStream) {
+                this.properties.load(inputStream);
+            }
+        } catch (IOException e) {
+            logger.warn("Kann Konfiguration '{}' nicht lesen", CONFIG_FILE, e);
+        }
+    }
+
+    PluginConfiguration(Properties properties) {
+        this.properties = properties;
+    }
+
+    public String getString(String key, String defaultValue) {
+        var value = System.getProperty(key, properties.getProperty(key));
+        if (null == value || value.isBlank()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        var value = getString(key, null);
+        if (null == value) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Ungültiger Wert '{}' für '{}', verwende '{}'", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        var value = getString(key, null);
+        if (null == value) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+}
@@ -25,14 +25,12 @@
 package de.ukw.ccc.onkostar.hl7address;
 
 import de.itc.onkostar.api.Disease;
-import de.itc.onkostar.api.IOnkostarApi;
 import de.itc.onkostar.api.Procedure;
 import de.itc.onkostar.api.analysis.AnalyseTriggerEvent;
 import de.itc.onkostar.api.analysis.AnalyzerRequirement;
 import de.itc.onkostar.api.analysis.IProcedureAnalyzer;
 import de.itc.onkostar.api.analysis.OnkostarPluginType;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import de.ukw.ccc.onkostar.hl7address.AnalyzerMetrics.Outcome;
 import org.springframework.stereotype.Component;
 
 import java.util.Set;
@@ -40,12 +38,20 @@ import java.util.Set;
 @Component
 public class ReorgAddressPlugin implements IProcedureAnalyzer {
 
-    private final Logger logger = LoggerFactory.getLogger(ReorgAddressPlugin.class);
+    private final ReorgProcessedPatients processedPatients;
 
-    private final IOnkostarApi onkostarApi;
+    private final ReorgAddressUpdater reorgAddressUpdater;
 
-    public ReorgAddressPlugin(final IOnkostarApi onkostarApi) {
-        this.onkostarApi = onkostarApi;
+    private final AnalyzerMetrics metrics;
+
+    public ReorgAddressPlugin(
+            final ReorgProcessedPatients processedPatients,
+            final ReorgAddressUpdater reorgAddressUpdater,
+            final AnalyzerMetrics metrics
+    ) {
+        this.processedPatients = processedPatients;
+        this.reorgAddressUpdater = reorgAddressUpdater;
+        this.metrics = metrics;
     }
 
     @Override
@@ -95,25 +101,17 @@ public class ReorgAddressPlugin implements IProcedureAnalyzer {
 
     @Override
     public void analyze(Procedure procedure, Disease disease) {
-        var patient = disease.getPatient();
-        var address = patient.getAddress();
-
-        if (null == address || null == address.getStreet()) {
-            logger.warn("Keine vollständige Adresse für Patient '{}'", patient.getPatientId());
+        // Case: Patient already processed for another disease within this run
+        Integer patientId = disease.getPatientId();
+        if (null == patientId) {
+            reorgAddressUpdater.update(disease.getPatient());
             return;
         }
-
-        var street = null == address.getStreet() ? "" : address.getStreet().trim();
-
-        // Case: No HouseNumber within StreetAddress
-        if (Address.getHouseNumberFromStreetAddress(street).isBlank()) {
+        if (processedPatients.isProcessed(patientId)) {
+            metrics.count(Outcome.SKIPPED);
             return;
         }
 
-        address.setStreet(Address.getStreetNameFromStreetAddress(street));
-        address.setHouseNumber(Address.getHouseNumberFromStreetAddress(street));
-
-        patient.setAddress(address);
-        onkostarApi.savePatient(patient);
+        reorgAddressUpdater.update(disease.getPatient(), () -> processedPatients.markProcessed(patientId));
     }
 }
@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.Patient;
+import de.ukw.ccc.onkostar.hl7address.AnalyzerMetrics.Outcome;
+import de.ukw.ccc.onkostar.hl7address.AnalyzerMetrics.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/// Splits street and house number of a stored patient address as done during reorganisation
+/// and saves the patient, or reports the change in dry-run mode
+@Component
+public class ReorgAddressUpdater {
+
+    private final Logger logger = LoggerFactory.getLogger(ReorgAddressUpdater.class);
+
+    private final StreetAddressCache streetAddressCache;
+
+    private final PatientWriter patientWriter;
+
+    private final ReorgChangeReport changeReport;
+
+    private final AnalyzerMetrics metrics;
+
+    public ReorgAddressUpdater(
+            final StreetAddressCache streetAddressCache,
+            final PatientWriter patientWriter,
+            final ReorgChangeReport changeReport,
+            final AnalyzerMetrics metrics
+    ) {
+        this.streetAddressCache = streetAddressCache;
+        this.patientWriter = patientWriter;
+        this.changeReport = changeReport;
+        this.metrics = metrics;
+    }
+
+    /// Returns `true` if the patient address was changed or, in dry-run mode, a change was reported
+    public boolean update(Patient patient) {
+        return update(patient, () -> {
+        });
+    }
+
+    /// Same as [#update(Patient)], running `onProcessed` once the patient needs no further processing,
+    /// that is after a successful save or if nothing has to be saved
+    public boolean update(Patient patient, Runnable onProcessed) {
+        var address = patient.getAddress();
+
+        if (null == address || null == address.getStreet()) {
+            logger.warn("Keine vollständige Adresse für Patient '{}'", patient.getPatientId());
+            metrics.count(Outcome.SKIPPED);
+            onProcessed.run();
+            return false;
+        }
+
+        var street = null == address.getStreet() ? "" : address.getStreet().trim();
+
+        var start = System.nanoTime();
+        var streetAddress = streetAddressCache.split(street);
+        metrics.record(Stage.SPLIT, start);
+
+        start = System.nanoTime();
+        var change = change(address.getStreet(), address.getHouseNumber(), streetAddress);
+        metrics.record(Stage.DIFF, start);
+        if (change == Change.NO_HOUSE_NUMBER) {
+            metrics.countUnparsableAddress();
+            metrics.count(Outcome.SKIPPED);
+            onProcessed.run();
+            return false;
+        }
+        if (change == Change.UNCHANGED) {
+            metrics.countSkippedWrite();
+            metrics.count(Outcome.SKIPPED);
+            onProcessed.run();
+            return false;
+        }
+
+        // Case: Dry-run, report proposed change only
+        if (changeReport.isEnabled()) {
+            changeReport.append(
+                    patient.getPatientId(),
+                    address.getStreet(),
+                    address.getHouseNumber(),
+                    streetAddress.getStreetName(),
+                    streetAddress.getHouseNumber()
+            );
+            metrics.count(Outcome.REPORTED);
+            onProcessed.run();
+            return true;
+        }
+
+        address.setStreet(streetAddress.getStreetName());
+        address.setHouseNumber(streetAddress.getHouseNumber());
+
+        patient.setAddress(address);
+
+        start = System.nanoTime();
+        patientWriter.save(patient, () -> {
+            metrics.countPerformedWrite();
+            onProcessed.run();
+        });
+        metrics.record(Stage.SAVE, start);
+        metrics.count(Outcome.SAVED);
+        return true;
+    }
+
+    /// Reorganisation rule for a stored street and house number and the split street address.
+    /// Also used by [AddressExportSplitter], so its preview matches the actual reorganisation.
+    static Change change(String street, String houseNumber, StreetAddress streetAddress) {
+        // Case: No HouseNumber within StreetAddress
+        if (streetAddress.getHouseNumber().isBlank()) {
+            return Change.NO_HOUSE_NUMBER;
+        }
+
+        // Case: Street and HouseNumber already split
+        if (!AddressChangeDetector.differs(street, houseNumber, streetAddress.getStreetName(), streetAddress.getHouseNumber())) {
+            return Change.UNCHANGED;
+        }
+
+        return Change.CHANGED;
+    }
+
+    enum Change {
+        NO_HOUSE_NUMBER,
+        UNCHANGED,
+        CHANGED
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/// Report of proposed address changes used if the reorganisation runs in dry-run mode.
+///
+/// Changes are appended to a CSV file by a background thread, so writing the report does not slow down
+/// the reorganisation. If the queue is full, callers wait until the background thread caught up.
+/// All queued changes are written on shutdown, changes appended afterwards are logged and discarded.
+@Component
+public class ReorgChangeReport implements DisposableBean {
+
+    static final String DRY_RUN_KEY = "hl7address.reorg.dry-run";
+
+    static final String REPORT_FILE_KEY = "hl7address.reorg.dry-run-report";
+
+    static final String HEADER = "patient_id;strasse_alt;hausnummer_alt;strasse_neu;hausnummer_neu";
+
+    private static final int CAPACITY = 10_000;
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
+    private final Logger logger = LoggerFactory.getLogger(ReorgChangeReport.class);
+
+    private final boolean enabled;
+
+    private final Path reportFile;
+
+    private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(CAPACITY);
+
+    private final Thread writer;
+
+    /// Appending holds the read lock, closing the write lock, so no change is queued after the writer finished
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean closed;
+
+    public ReorgChangeReport(final PluginConfiguration configuration) {
+        this.enabled = configuration.getBoolean(DRY_RUN_KEY, false);
+        this.reportFile = Path.of(configuration.getString(
+                REPORT_FILE_KEY,
+                Path.of(System.getProperty("java.io.tmpdir"), "hl7address-reorg-report.csv").toString()
+        ));
+
+        if (enabled) {
+            logger.info("Reorganisation im Testmodus, Änderungen werden nach '{}' geschrieben", reportFile);
+            this.writer = new Thread(this::runWriter, "hl7address-reorg-report");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /// Returns `true` if changes are reported only and must not be saved
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void append(String patientId, String oldStreet, String oldHouseNumber, String newStreet, String newHouseNumber) {
+        if (!enabled) {
+            return;
+        }
+
+        var line = new StringBuilder(96);
+        CsvFields.append(line, nullToEmpty(patientId), ';');
+        for (var value : new String[]{oldStreet, oldHouseNumber, newStreet, newHouseNumber}) {
+            line.append(';');
+            CsvFields.append(line, nullToEmpty(value), ';');
+        }
+
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                logger.warn("Bericht '{}' ist bereits geschlossen, Änderung für Patient '{}' wird verworfen", reportFile, patientId);
+                return;
+            }
+            lines.put(line.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    Path getReportFile() {
+        return reportFile;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (null == writer) {
+            return;
+        }
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+        if (writer.isAlive()) {
+            logger.error("Bericht '{}' wurde nicht vollständig geschrieben, {} Änderungen ausstehend", reportFile, lines.size());
+        }
+    }
+
+    private void runWriter() {
+        try (var out = openReport()) {
+            var batch = new ArrayList<String>(256);
+            while (true) {
+                var first = lines.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (null == first) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                lines.drainTo(batch, 255);
+                for (var line : batch) {
+                    out.write(line);
+                    out.newLine();
+                }
+                batch.clear();
+                if (lines.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Kann Bericht '{}' nicht schreiben", reportFile, e);
+            discardRemaining();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BufferedWriter openReport() throws IOException {
+        var exists = Files.exists(reportFile) && Files.size(reportFile) > 0;
+        var result = Files.newBufferedWriter(
+                reportFile,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+        );
+        if (!exists) {
+            result.write(HEADER);
+            result.newLine();
+        }
+        return result;
+    }
+
+    /// Keeps analyzers from blocking if the report cannot be written
+    private void discardRemaining() {
+        try {
+            while (null != lines.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) || !closed) {
+                // Discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return null == value ? "" : value;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/// Patient ids already processed within the current reorganisation run, stored as a bitmap.
+///
+/// Onkostar does not signal the start or end of a reorganisation. A new run is therefore assumed
+/// if no patient has been processed for the configured idle timeout.
+/// Patients are marked only after they have been processed successfully, so a failed save is retried
+/// for another disease of the same patient.
+@Component
+public class ReorgProcessedPatients {
+
+    static final String IDLE_TIMEOUT_KEY = "hl7address.reorg.run-idle-timeout-seconds";
+
+    static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+
+    private final long idleTimeoutNanos;
+
+    private final LongSupplier nanoTime;
+
+    private BitSet processedPatientIds = new BitSet();
+
+    private long lastAccess;
+
+    public ReorgProcessedPatients(final PluginConfiguration configuration) {
+        this(configuration.getInt(IDLE_TIMEOUT_KEY, DEFAULT_IDLE_TIMEOUT_SECONDS), System::nanoTime);
+    }
+
+    ReorgProcessedPatients(int idleTimeoutSeconds, LongSupplier nanoTime) {
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.nanoTime = nanoTime;
+        this.lastAccess = nanoTime.getAsLong();
+    }
+
+    /// Returns `true` if the patient has already been processed successfully within the current run
+    public synchronized boolean isProcessed(int patientId) {
+        startNewRunIfIdle();
+        return patientId >= 0 && processedPatientIds.get(patientId);
+    }
+
+    /// Returns `true` if the patient has not been processed within the current run before
+    public synchronized boolean markProcessed(int patientId) {
+        startNewRunIfIdle();
+        if (patientId < 0) {
+            return true;
+        }
+        if (processedPatientIds.get(patientId)) {
+            return false;
+        }
+        processedPatientIds.set(patientId);
+        return true;
+    }
+
+    private void startNewRunIfIdle() {
+        var now = nanoTime.getAsLong();
+        if (now - lastAccess > idleTimeoutNanos) {
+            processedPatientIds = new BitSet();
+        }
+        lastAccess = now;
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Bounded cache of street address split results using a segmented LRU eviction policy.
+/// New entries are added to the probationary segment and are promoted to the protected segment on
+/// their second access. Evictions are taken from the probationary segment first, so streets seen
+/// only once do not evict frequently used ones.
+///
+/// The cache is split into independently locked stripes by street address, so concurrent lookups of
+/// different streets rarely wait for each other. Usage is published using JMX as
+/// `de.ukw.ccc.onkostar.hl7address:type=Cache,name=street-address`.
+@Component
+public class StreetAddressCache implements CacheMetricsMXBean, InitializingBean, DisposableBean {
+
+    static final String CACHE_SIZE_KEY = "hl7address.street-address-cache.size";
+
+    static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private static final int MAX_STRIPES = 16;
+
+    /// Keeps stripes large enough for the eviction policy to be effective
+    private static final int MIN_STRIPE_SIZE = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(StreetAddressCache.class);
+
+    private final int maximumSize;
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private ObjectName objectName;
+
+    public StreetAddressCache(final PluginConfiguration configuration) {
+        this(configuration.getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE));
+    }
+
+    StreetAddressCache(int maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+        var stripeCount = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, this.maximumSize / MIN_STRIPE_SIZE)));
+        this.stripes = new Stripe[stripeCount];
+        for (var i = 0; i < stripeCount; i++) {
+            // Distributes the maximum size exactly
+            this.stripes[i] = new Stripe(this.maximumSize / stripeCount + (i < this.maximumSize % stripeCount ? 1 : 0));
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    /// Uses street name and house number of the address if already known, otherwise splits its street address
+    public StreetAddress split(Address address) {
+        var result = address.getKnownStreetAddress();
+        if (null != result) {
+            return result;
+        }
+        return split(address.getStreetAddress());
+    }
+
+    /// Same as Address.splitStreetAddress() but reuses previous results
+    public StreetAddress split(String streetAddress) {
+        if (maximumSize == 0) {
+            missCount.increment();
+            return Address.splitStreetAddress(streetAddress);
+        }
+
+        var stripe = stripeFor(streetAddress);
+        var result = stripe.get(streetAddress);
+        if (null != result) {
+            hitCount.increment();
+            return result;
+        }
+
+        missCount.increment();
+        result = Address.splitStreetAddress(streetAddress);
+        var evicted = stripe.put(streetAddress, result);
+        if (evicted > 0) {
+            evictionCount.add(evicted);
+        }
+        return result;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public int getSize() {
+        var result = 0;
+        for (var stripe : stripes) {
+            result += stripe.size();
+        }
+        return result;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            var name = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=Cache,name=street-address");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.objectName = name;
+        } catch (JMException e) {
+            logger.warn("Kann Cache-Metriken nicht über JMX bereitstellen", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (null == objectName) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.debug("Kann Cache-Metriken '{}' nicht entfernen", objectName, e);
+        }
+    }
+
+    private Stripe stripeFor(String streetAddress) {
+        var hash = streetAddress.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Stripe {
+        private final int maximumSize;
+        private final int protectedCapacity;
+        private final LinkedHashMap<String, StreetAddress> probationarySegment = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, StreetAddress> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Stripe(int maximumSize) {
+            this.maximumSize = maximumSize;
+            this.protectedCapacity = maximumSize * 4 / 5;
+        }
+
+        private synchronized StreetAddress get(String streetAddress) {
+            var result = protectedSegment.get(streetAddress);
+            if (null == result) {
+                result = probationarySegment.remove(streetAddress);
+                if (null != result) {
+                    promote(streetAddress, result);
+                }
+            }
+            return result;
+        }
+
+        /// Returns the number of evicted entries
+        private synchronized int put(String streetAddress, StreetAddress result) {
+            if (protectedSegment.containsKey(streetAddress)) {
+                return 0;
+            }
+            probationarySegment.put(streetAddress, result);
+            return evict();
+        }
+
+        private synchronized int size() {
+            return probationarySegment.size() + protectedSegment.size();
+        }
+
+        private void promote(String streetAddress, StreetAddress result) {
+            protectedSegment.put(streetAddress, result);
+            if (protectedSegment.size() > protectedCapacity) {
+                var eldest = protectedSegment.entrySet().iterator().next();
+                protectedSegment.remove(eldest.getKey());
+                probationarySegment.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private int evict() {
+            var result = 0;
+            while (probationarySegment.size() + protectedSegment.size() > maximumSize) {
+                var segment = probationarySegment.isEmpty() ? protectedSegment : probationarySegment;
+                var iterator = segment.keySet().iterator();
+                iterator.next();
+                iterator.remove();
+                result++;
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+/// Splits a street address into street name and house number without backtracking.
+///
+/// The result is the same as the first match of
+/// `(?<streetName>[^,]+)+[,\s]+(?<houseNumber>([0-9]+[A-Za-z\s\-/]*)*)$`
+/// but is found in O(n): The house number is the part after the last run of commas or whitespaces
+/// that is either empty or starts with a digit and contains only digits, letters, whitespaces, '-' or '/'.
+/// The street name ends with the last possible separator before the first comma of the current segment.
+final class StreetAddressScanner {
+
+    private StreetAddressScanner() {
+    }
+
+    /// Returns the match or `null` if the street address cannot be split
+    static Match find(String input) {
+        var length = input.length();
+        // '$' also matches before a final line terminator, which is not part of a house number
+        var end = length > 0 && isNonWhitespaceLineTerminator(input.charAt(length - 1)) ? length - 1 : length;
+
+        // Smallest index of a suffix that consists of house number characters only
+        var houseNumberCharsStart = end;
+        while (houseNumberCharsStart > 0 && isHouseNumberChar(input.charAt(houseNumberCharsStart - 1))) {
+            houseNumberCharsStart--;
+        }
+
+        var cachedRunStart = -1;
+        var cachedRunEnd = -1;
+
+        var segmentStart = 0;
+        while (segmentStart < end) {
+            if (input.charAt(segmentStart) == ',') {
+                segmentStart++;
+                continue;
+            }
+
+            var comma = input.indexOf(',', segmentStart);
+            var lastSeparator = comma < 0 || comma >= end ? end - 1 : comma;
+
+            // Scan right to left for the last separator that is followed by a valid house number
+            var runEnd = -1;
+            for (var separator = lastSeparator; separator > segmentStart; separator--) {
+                if (!isSeparator(input.charAt(separator))) {
+                    runEnd = -1;
+                    continue;
+                }
+                if (runEnd < 0) {
+                    if (separator != lastSeparator) {
+                        runEnd = separator + 1;
+                    } else if (separator >= cachedRunStart && separator < cachedRunEnd) {
+                        runEnd = cachedRunEnd;
+                    } else {
+                        runEnd = separator + 1;
+                        while (runEnd < length && isSeparator(input.charAt(runEnd))) {
+                            runEnd++;
+                        }
+                        cachedRunStart = separator;
+                        cachedRunEnd = runEnd;
+                    }
+                }
+                if (runEnd == end || (runEnd >= houseNumberCharsStart && runEnd < end && isDigit(input.charAt(runEnd)))) {
+                    return new Match(input, segmentStart, separator, runEnd, end);
+                }
+            }
+
+            if (comma < 0 || comma >= end) {
+                break;
+            }
+            segmentStart = comma + 1;
+        }
+
+        return null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    /// Same as regex `\s`
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ',' || isWhitespace(c);
+    }
+
+    private static boolean isHouseNumberChar(char c) {
+        return isDigit(c) || isLetter(c) || isWhitespace(c) || c == '-' || c == '/';
+    }
+
+    /// Line terminators matched by '$' that are not included in regex `\s`
+    private static boolean isNonWhitespaceLineTerminator(char c) {
+        return c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    static final class Match {
+
+        private final String input;
+
+        private final int streetNameStart;
+
+        private final int streetNameEnd;
+
+        private final int houseNumberStart;
+
+        private final int houseNumberEnd;
+
+        private Match(String input, int streetNameStart, int streetNameEnd, int houseNumberStart, int houseNumberEnd) {
+            this.input = input;
+            this.streetNameStart = streetNameStart;
+            this.streetNameEnd = streetNameEnd;
+            this.houseNumberStart = houseNumberStart;
+            this.houseNumberEnd = houseNumberEnd;
+        }
+
+        String getStreetName() {
+            return input.substring(streetNameStart, streetNameEnd);
+        }
+
+        String getHouseNumber() {
+            return input.substring(houseNumberStart, houseNumberEnd);
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+/// Decodes an encoded XAD using the encoding characters of the message in one single scan.
+/// Escape sequences of delimiters (`\F\`, `\S\`, `\T\`, `\R\`, `\E\`) are replaced, all other escape sequences are kept.
+/// XAD-1 is interpreted in SAP MCI format `<street address>&<street name>&<house number>` on the fly,
+/// so street name and house number are used directly if they match the street address.
+final class XadDecoder {
+
+    /// MSH-1 and MSH-2 as used by most messages
+    static final String DEFAULT_ENCODING_CHARACTERS = "|^~\\&";
+
+    static final XadDecoder DEFAULT = new XadDecoder(DEFAULT_ENCODING_CHARACTERS);
+
+    private static final int COMPONENT_COUNT = 7;
+
+    private static final char SUBCOMPONENT_SEPARATOR = '&';
+
+    private static final String SUBCOMPONENT_SEPARATOR_STRING = "&";
+
+    private final char fieldSeparator;
+
+    private final char componentSeparator;
+
+    private final char repetitionSeparator;
+
+    private final char escapeCharacter;
+
+    private final char subcomponentSeparator;
+
+    private XadDecoder(String encodingCharacters) {
+        this.fieldSeparator = encodingCharacter(encodingCharacters, 0);
+        this.componentSeparator = encodingCharacter(encodingCharacters, 1);
+        this.repetitionSeparator = encodingCharacter(encodingCharacters, 2);
+        this.escapeCharacter = encodingCharacter(encodingCharacters, 3);
+        this.subcomponentSeparator = encodingCharacter(encodingCharacters, 4);
+    }
+
+    /// Returns a decoder for the given MSH-1 and MSH-2, missing characters are replaced by their default
+    static XadDecoder of(String encodingCharacters) {
+        if (null == encodingCharacters || encodingCharacters.startsWith(DEFAULT_ENCODING_CHARACTERS)) {
+            return DEFAULT;
+        }
+        return new XadDecoder(encodingCharacters);
+    }
+
+    private static char encodingCharacter(String encodingCharacters, int index) {
+        return index < encodingCharacters.length()
+                ? encodingCharacters.charAt(index)
+                : DEFAULT_ENCODING_CHARACTERS.charAt(index);
+    }
+
+    /// Missing trailing components are empty, components after XAD-7 are ignored.
+    /// Subcomponents are separated by `&` in the result, independent of the encoding characters.
+    /// Components without subcomponents and escape sequences are taken from the input without copying into a buffer.
+    Address decode(String xad) {
+        var builder = Address.builder();
+        var length = xad.length();
+        StringBuilder buffer = null;
+        var nextSpecial = nextSpecialCharacter(xad, 0);
+        var position = 0;
+
+        for (var component = 0; component < COMPONENT_COUNT && position <= length; component++) {
+            var componentEnd = xad.indexOf(componentSeparator, position);
+            if (componentEnd < 0) {
+                componentEnd = length;
+            }
+
+            if (nextSpecial >= componentEnd) {
+                setComponent(builder, component, trimmedSubstring(xad, position, componentEnd));
+                position = componentEnd + 1;
+                continue;
+            }
+
+            if (null == buffer) {
+                buffer = new StringBuilder(length);
+            }
+            buffer.setLength(0);
+            var separatorCount = 0;
+            var firstSeparator = -1;
+            var secondSeparator = -1;
+            var separatorRunStart = -1;
+            var separatorRunEnd = -1;
+            var literalSeparator = false;
+
+            while (position < componentEnd && xad.charAt(position) <= ' ') {
+                position++;
+            }
+            while (position < componentEnd) {
+                var c = xad.charAt(position);
+                if (c == subcomponentSeparator) {
+                    if (separatorRunEnd != buffer.length()) {
+                        separatorRunStart = buffer.length();
+                    }
+                    if (separatorCount == 0) {
+                        firstSeparator = buffer.length();
+                    } else if (separatorCount == 1) {
+                        secondSeparator = buffer.length();
+                    }
+                    separatorCount++;
+                    buffer.append(SUBCOMPONENT_SEPARATOR);
+                    separatorRunEnd = buffer.length();
+                    position++;
+                } else if (c == escapeCharacter) {
+                    var decodedStart = buffer.length();
+                    position = appendEscapeSequence(xad, position, componentEnd, buffer);
+                    literalSeparator |= buffer.indexOf(SUBCOMPONENT_SEPARATOR_STRING, decodedStart) >= 0;
+                } else {
+                    literalSeparator |= c == SUBCOMPONENT_SEPARATOR;
+                    buffer.append(c);
+                    position++;
+                }
+            }
+            position = componentEnd + 1;
+            nextSpecial = nextSpecialCharacter(xad, position);
+
+            var end = buffer.length();
+            while (end > 0 && buffer.charAt(end - 1) <= ' ') {
+                end--;
+            }
+            var value = end == 0 ? "" : buffer.substring(0, end);
+
+            if (component > 0) {
+                setComponent(builder, component, value);
+                continue;
+            }
+
+            // Trailing empty subcomponents are ignored
+            var contentEnd = end;
+            if (separatorRunEnd == end) {
+                contentEnd = separatorRunStart;
+                separatorCount -= separatorRunEnd - separatorRunStart;
+            }
+            if (separatorCount == 2 && isSapMciStreetAddress(buffer, firstSeparator, secondSeparator, contentEnd)) {
+                builder.withStreetAddress(new StreetAddress(
+                        buffer.substring(0, firstSeparator),
+                        buffer.substring(firstSeparator + 1, secondSeparator),
+                        buffer.substring(secondSeparator + 1, contentEnd)
+                ));
+            } else if (literalSeparator) {
+                // A literal '&' must not be interpreted as SAP MCI format later on
+                builder.withStreetAddress(Address.splitPlainStreetAddress(value));
+            } else {
+                builder.withStreetAddress(value);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /// Returns the position of the next subcomponent separator, escape character or literal `&`, or the length of the input
+    private int nextSpecialCharacter(String xad, int start) {
+        var result = minIndex(xad.indexOf(subcomponentSeparator, start), xad.indexOf(escapeCharacter, start));
+        if (subcomponentSeparator != SUBCOMPONENT_SEPARATOR) {
+            result = minIndex(result, xad.indexOf(SUBCOMPONENT_SEPARATOR, start));
+        }
+        return result < 0 ? xad.length() : result;
+    }
+
+    private static int minIndex(int first, int second) {
+        if (first < 0) {
+            return second;
+        }
+        return second < 0 ? first : Math.min(first, second);
+    }
+
+    private static void setComponent(Address.Builder builder, int component, String value) {
+        switch (component) {
+            case 0:
+                builder.withStreetAddress(value);
+                break;
+            case 1:
+                builder.withOtherDesignation(value);
+                break;
+            case 2:
+                builder.withCity(value);
+                break;
+            case 3:
+                builder.withState(value);
+                break;
+            case 4:
+                builder.withPostalCode(value);
+                break;
+            case 5:
+                builder.withCountry(value);
+                break;
+            case 6:
+                builder.withAddressType(value);
+                break;
+        }
+    }
+
+    /// Same result as `substring(start, end).trim()` but creates at most one new String
+    static String trimmedSubstring(String value, int start, int end) {
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return "";
+        }
+        return value.substring(start, end);
+    }
+
+    /// Appends the decoded escape sequence starting at `start` and returns the position after it.
+    /// Unknown escape sequences are appended unchanged, an escape character without closing one is appended as is.
+    private int appendEscapeSequence(String xad, int start, int componentEnd, StringBuilder buffer) {
+        var end = start + 1;
+        while (end < componentEnd && xad.charAt(end) != escapeCharacter) {
+            end++;
+        }
+        if (end >= componentEnd) {
+            buffer.append(xad.charAt(start));
+            return start + 1;
+        }
+
+        if (end == start + 2) {
+            switch (xad.charAt(start + 1)) {
+                case 'F':
+                    buffer.append(fieldSeparator);
+                    return end + 1;
+                case 'S':
+                    buffer.append(componentSeparator);
+                    return end + 1;
+                case 'T':
+                    buffer.append(subcomponentSeparator);
+                    return end + 1;
+                case 'R':
+                    buffer.append(repetitionSeparator);
+                    return end + 1;
+                case 'E':
+                    buffer.append(escapeCharacter);
+                    return end + 1;
+            }
+        }
+        buffer.append(xad, start, end + 1);
+        return end + 1;
+    }
+
+    /// Same check as Address.getStreetAddressFromSapMciFormat(): `<street address>` equals `<street name> <house number>`
+    private static boolean isSapMciStreetAddress(StringBuilder buffer, int firstSeparator, int secondSeparator, int end) {
+        var streetNameLength = secondSeparator - firstSeparator - 1;
+        var houseNumberLength = end - secondSeparator - 1;
+        if (firstSeparator != streetNameLength + 1 + houseNumberLength || buffer.charAt(streetNameLength) != ' ') {
+            return false;
+        }
+        for (var i = 0; i < streetNameLength; i++) {
+            if (buffer.charAt(i) != buffer.charAt(firstSeparator + 1 + i)) {
+                return false;
+            }
+        }
+        for (var i = 0; i < houseNumberLength; i++) {
+            if (buffer.charAt(streetNameLength + 1 + i) != buffer.charAt(secondSeparator + 1 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
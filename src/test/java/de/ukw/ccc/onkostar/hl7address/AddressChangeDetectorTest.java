@@ -0,0 +1,62 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.Address;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AddressChangeDetectorTest {
+
+    private final AddressChangeDetector addressChangeDetector = new AddressChangeDetector();
+
+    @ParameterizedTest
+    @MethodSource("changeTestSource")
+    void shouldDetectChanges(String street, String houseNumber, String streetName, String proposedHouseNumber, boolean expected) {
+        var address = new Address();
+        address.setStreet(street);
+        address.setHouseNumber(houseNumber);
+
+        assertThat(addressChangeDetector.hasChanged(address, streetName, proposedHouseNumber)).isEqualTo(expected);
+    }
+
+    private static Stream<Arguments> changeTestSource() {
+        return Stream.of(
+                Arguments.of("Teststraße", "42", "Teststraße", "42", false),
+                Arguments.of("Teststraße ", " 42", "Teststraße", "42", false),
+                Arguments.of(null, null, "", "", false),
+                Arguments.of("Teststraße", null, "Teststraße", "", false),
+                Arguments.of("Teststraße", "42", "Teststraße", "4", true),
+                Arguments.of("Teststraße 42", "", "Teststraße", "42", true),
+                Arguments.of("Teststraße", "Teststraße", "Teststraße", "42", true)
+        );
+    }
+
+}
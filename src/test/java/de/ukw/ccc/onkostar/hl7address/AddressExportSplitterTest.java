@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AddressExportSplitterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldWriteProposedStreetAndHouseNumber() throws IOException {
+        var input = write(
+                "patient_id;strasse;hausnummer",
+                "1;Testweg 42;",
+                "2;Am Schlag;4",
+                "3;Postfach;",
+                "4;\"Teststraße; Hinterhaus 1\";"
+        );
+        var output = tempDir.resolve("output.csv");
+
+        var result = new AddressExportSplitter(';', "strasse", "hausnummer", 2).run(input, output);
+
+        assertThat(result.getRowCount()).isEqualTo(4);
+        assertThat(result.getChangedCount()).isEqualTo(2);
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8)).containsExactly(
+                "patient_id;strasse;hausnummer;vorschlag_strasse;vorschlag_hausnummer;geaendert",
+                "1;Testweg 42;;Testweg;42;true",
+                "2;Am Schlag;4;Am Schlag;4;false",
+                "3;Postfach;;Postfach;;false",
+                "4;\"Teststraße; Hinterhaus 1\";;\"Teststraße; Hinterhaus\";1;true"
+        );
+    }
+
+    @Test
+    void shouldKeepOrderOfLargeExports() throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("strasse,hausnummer");
+        var rows = AddressExportSplitter.CHUNK_SIZE * 5 + 17;
+        for (var i = 0; i < rows; i++) {
+            lines.add("Teststraße " + i + ",");
+        }
+        var input = write(lines.toArray(new String[0]));
+        var output = tempDir.resolve("output.csv");
+
+        var result = new AddressExportSplitter(',', "strasse", "hausnummer", 4).run(input, output);
+
+        assertThat(result.getRowCount()).isEqualTo(rows);
+        assertThat(result.getChangedCount()).isEqualTo(rows);
+        var outputLines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertThat(outputLines).hasSize(rows + 1);
+        for (var i = 0; i < rows; i++) {
+            assertThat(outputLines.get(i + 1)).isEqualTo("Teststraße " + i + ",,Teststraße," + i + ",true");
+        }
+    }
+
+    @Test
+    void shouldReadAndWriteGivenCharset() throws IOException {
+        var input = tempDir.resolve("input.csv");
+        Files.write(input, List.of("strasse,hausnummer", "Teststraße 1,"), StandardCharsets.ISO_8859_1);
+        var output = tempDir.resolve("output.csv");
+
+        new AddressExportSplitter(',', "strasse", "hausnummer", StandardCharsets.ISO_8859_1, 1).run(input, output);
+
+        assertThat(Files.readAllLines(output, StandardCharsets.ISO_8859_1)).containsExactly(
+                "strasse,hausnummer,vorschlag_strasse,vorschlag_hausnummer,geaendert",
+                "Teststraße 1,,Teststraße,1,true"
+        );
+    }
+
+    @Test
+    void shouldKeepLineBreaksWithinQuotedFields() throws IOException {
+        var input = write(
+                "patient_id,strasse,hausnummer,bemerkung",
+                "1,Testweg 42,,\"erste Zeile",
+                "zweite Zeile\"",
+                "2,Am Schlag,4,"
+        );
+        var output = tempDir.resolve("output.csv");
+
+        var result = new AddressExportSplitter(',', "strasse", "hausnummer", 1).run(input, output);
+
+        assertThat(result.getRowCount()).isEqualTo(2);
+        assertThat(result.getChangedCount()).isEqualTo(1);
+        assertThat(Files.readAllLines(output, StandardCharsets.UTF_8)).containsExactly(
+                "patient_id,strasse,hausnummer,bemerkung,vorschlag_strasse,vorschlag_hausnummer,geaendert",
+                "1,Testweg 42,,\"erste Zeile",
+                "zweite Zeile\",Testweg,42,true",
+                "2,Am Schlag,4,,Am Schlag,4,false"
+        );
+    }
+
+    @Test
+    void shouldKeepOriginalLineTerminatorsWithinQuotedFields() throws IOException {
+        var input = tempDir.resolve("input.csv");
+        Files.writeString(
+                input,
+                "strasse,hausnummer,bemerkung\r\nTestweg 42,,\"erste\r\nzweite\ndritte\"\r\n",
+                StandardCharsets.UTF_8
+        );
+        var output = tempDir.resolve("output.csv");
+
+        new AddressExportSplitter(',', "strasse", "hausnummer", 1).run(input, output);
+
+        assertThat(Files.readString(output, StandardCharsets.UTF_8)).contains(
+                "Testweg 42,,\"erste\r\nzweite\ndritte\",Testweg,42,true" + System.lineSeparator()
+        );
+    }
+
+    @Test
+    void shouldFailOnUnclosedQuote() throws IOException {
+        var input = write("strasse,hausnummer", "Testweg 42,", "\"Am Schlag 4,");
+
+        assertThatThrownBy(() -> new AddressExportSplitter(',', "strasse", "hausnummer", 1).run(input, tempDir.resolve("output.csv")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Zeile 3");
+    }
+
+    @Test
+    void shouldFailIfStreetColumnIsMissing() throws IOException {
+        var input = write("patient_id,hausnummer", "1,42");
+
+        assertThatThrownBy(() -> new AddressExportSplitter(',', "strasse", "hausnummer", 1).run(input, tempDir.resolve("output.csv")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path write(String... lines) throws IOException {
+        var result = tempDir.resolve("input.csv");
+        Files.write(result, List.of(lines), StandardCharsets.UTF_8);
+        return result;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AddressFingerprintWindowTest {
+
+    private static final String ENCODING_CHARACTERS = "|^~\\&";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void shouldContainAppliedFingerprint() {
+        var window = new AddressFingerprintWindow(100, 60, nanoTime::get);
+        var fingerprint = AddressFingerprintWindow.fingerprint(List.of("Testweg 42^^Musterhausen"), ENCODING_CHARACTERS);
+
+        assertThat(window.contains("2000123456", fingerprint)).isFalse();
+        window.put("2000123456", fingerprint);
+
+        assertThat(window.contains("2000123456", fingerprint)).isTrue();
+        assertThat(window.contains("2000123457", fingerprint)).isFalse();
+        assertThat(window.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReplacePreviousFingerprintOfPatient() {
+        var window = new AddressFingerprintWindow(100, 60, nanoTime::get);
+        var first = AddressFingerprintWindow.fingerprint(List.of("Testweg 42^^Musterhausen"), ENCODING_CHARACTERS);
+        var second = AddressFingerprintWindow.fingerprint(List.of("Am Schlag 4^^Musterhausen"), ENCODING_CHARACTERS);
+
+        window.put("2000123456", first);
+        window.put("2000123456", second);
+
+        assertThat(window.contains("2000123456", first)).isFalse();
+        assertThat(window.contains("2000123456", second)).isTrue();
+    }
+
+    @Test
+    void shouldExpireFingerprintAfterWindow() {
+        var window = new AddressFingerprintWindow(100, 60, nanoTime::get);
+        var fingerprint = AddressFingerprintWindow.fingerprint(List.of("Testweg 42^^Musterhausen"), ENCODING_CHARACTERS);
+        window.put("2000123456", fingerprint);
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertThat(window.contains("2000123456", fingerprint)).isTrue();
+
+        nanoTime.incrementAndGet();
+        assertThat(window.contains("2000123456", fingerprint)).isFalse();
+    }
+
+    @Test
+    void shouldDistinguishRepetitionsAndEncodingCharacters() {
+        var fingerprint = AddressFingerprintWindow.fingerprint(List.of("Testweg 42", "Musterhausen"), ENCODING_CHARACTERS);
+
+        assertThat(AddressFingerprintWindow.fingerprint(List.of("Testweg 42Musterhausen"), ENCODING_CHARACTERS)).isNotEqualTo(fingerprint);
+        assertThat(AddressFingerprintWindow.fingerprint(List.of("Testweg 42", "Musterhausen"), "|^~\\#")).isNotEqualTo(fingerprint);
+        assertThat(AddressFingerprintWindow.fingerprint(List.of("Testweg 42", "Musterhausen"), ENCODING_CHARACTERS)).isEqualTo(fingerprint);
+    }
+
+    @Test
+    void shouldStayBoundedAndKeepRecentPatients() {
+        var window = new AddressFingerprintWindow(1_000, 60, nanoTime::get);
+
+        for (var i = 0; i < 100_000; i++) {
+            nanoTime.incrementAndGet();
+            window.put(Integer.toString(i), i);
+        }
+
+        var recent = 0;
+        for (var i = 99_000; i < 100_000; i++) {
+            if (window.contains(Integer.toString(i), i)) {
+                recent++;
+            }
+        }
+        assertThat(recent).isGreaterThan(900);
+        assertThat(window.contains("0", 0)).isFalse();
+    }
+
+    @Test
+    void shouldBeDisabledBySizeZero() {
+        var properties = new Properties();
+        properties.setProperty(AddressFingerprintWindow.SIZE_KEY, "0");
+        var window = new AddressFingerprintWindow(new PluginConfiguration(properties));
+
+        window.put("2000123456", 42L);
+
+        assertThat(window.contains("2000123456", 42L)).isFalse();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AddressSelectorTest {
+
+    private final AddressSelector addressSelector = new AddressSelector(new DefaultHl7AddressSplitter(), new PluginConfiguration());
+
+    @Test
+    void shouldSelectAddressByPriority() {
+        var address = addressSelector.select(List.of(
+                "Postfach 1^^Musterhausen^^12345^DE^M",
+                "Am Schlag 4^^Musterhausen^^12345^DE^C",
+                "Testweg 42^^Musterhausen^^12345^DE^H"
+        ));
+
+        assertThat(address).isPresent();
+        assertThat(address.get().getStreetAddress()).isEqualTo("Testweg 42");
+    }
+
+    @Test
+    void shouldSelectFirstAddressOnEqualPriority() {
+        var address = addressSelector.select(List.of(
+                "Testweg 42^^Musterhausen^^12345^DE",
+                "Am Schlag 4^^Musterhausen^^12345^DE"
+        ));
+
+        assertThat(address).isPresent();
+        assertThat(address.get().getStreetAddress()).isEqualTo("Testweg 42");
+    }
+
+    @Test
+    void shouldPreferListedAddressTypes() {
+        var address = addressSelector.select(List.of(
+                "Testweg 42^^Musterhausen^^12345^DE",
+                "Am Schlag 4^^Musterhausen^^12345^DE^m"
+        ));
+
+        assertThat(address).isPresent();
+        assertThat(address.get().getStreetAddress()).isEqualTo("Am Schlag 4");
+    }
+
+    @Test
+    void shouldUseConfiguredPriority() {
+        var properties = new Properties();
+        properties.setProperty(AddressSelector.ADDRESS_TYPE_PRIORITY_KEY, "C, H");
+        var configuredAddressSelector = new AddressSelector(new DefaultHl7AddressSplitter(), new PluginConfiguration(properties));
+
+        var address = configuredAddressSelector.select(List.of(
+                "Testweg 42^^Musterhausen^^12345^DE^H",
+                "Am Schlag 4^^Musterhausen^^12345^DE^C"
+        ));
+
+        assertThat(address).isPresent();
+        assertThat(address.get().getStreetAddress()).isEqualTo("Am Schlag 4");
+    }
+
+    @Test
+    void shouldIgnoreEmptyRepetitions() {
+        var address = addressSelector.select(List.of(
+                "",
+                "^^Musterhausen^^12345^DE",
+                "Testweg 42^^Musterhausen^^12345^DE"
+        ));
+
+        assertThat(address).isPresent();
+        assertThat(address.get().getStreetAddress()).isEqualTo("Testweg 42");
+    }
+
+    @Test
+    void shouldSelectNothingIfAllRepetitionsAreEmpty() {
+        assertThat(addressSelector.select(List.of("", "  ^^Musterhausen"))).isEmpty();
+    }
+
+    @Test
+    void shouldSelectNothingWithoutAddresses() {
+        assertThat(addressSelector.select(List.of())).isEmpty();
+    }
+
+}
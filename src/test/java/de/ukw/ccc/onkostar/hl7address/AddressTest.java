@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AddressTest {
+
+    @Test
+    void shouldSplitStreetAddressOnce() {
+        var streetAddress = Address.splitStreetAddress("Teststraße 42 a");
+
+        assertThat(streetAddress.getStreetAddress()).isEqualTo("Teststraße 42 a");
+        assertThat(streetAddress.getStreetName()).isEqualTo("Teststraße");
+        assertThat(streetAddress.getHouseNumber()).isEqualTo("42 a");
+    }
+
+    @Test
+    void shouldUseStreetAddressAsStreetNameIfNotSplittable() {
+        var streetAddress = Address.splitStreetAddress("Teststraße");
+
+        assertThat(streetAddress.getStreetName()).isEqualTo("Teststraße");
+        assertThat(streetAddress.getHouseNumber()).isEmpty();
+    }
+
+    @Test
+    void shouldReturnSameSplitResultOnRepeatedAccess() {
+        var address = Address.builder().withStreetAddress("Muster Weg 1&Muster Weg&1").build();
+
+        assertThat(address.getStreetAddress()).isEqualTo("Muster Weg 1");
+        assertThat(address.getStreetName()).isEqualTo("Muster Weg");
+        assertThat(address.getHouseNumber()).isEqualTo("1");
+        assertThat(address.getStreetName()).isSameAs(address.getStreetName());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Muster Weg 1&Muster Weg&1",
+            "Muster Weg 1&Muster Weg&2",
+            "Muster Weg &Muster Weg&",
+            " &&",
+            "&&",
+            "&Muster&1",
+            "Muster 1&Muster&1&",
+            "Muster 1&Muster&1&&",
+            "Muster 1&&Muster&1",
+            "Muster 1&Muster&1&1",
+            "Muster 1&Muster 1",
+            "Muster&1",
+            "a b c&a b&c",
+            "a b c&a&b c"
+    })
+    void shouldResolveSapMciFormatLikeBefore(String input) {
+        assertThat(Address.splitStreetAddress(input).getStreetAddress()).isEqualTo(formerSapMciFormat(input));
+    }
+
+    private static String formerSapMciFormat(String input) {
+        if (input.contains("&")) {
+            var parts = input.split("&");
+            if (parts.length == 3 && parts[0].equals(String.format("%s %s", parts[1], parts[2]))) {
+                return parts[0];
+            }
+        }
+        return input;
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AnalyzerMetricsTest {
+
+    @Test
+    void shouldCountOutcomes() {
+        var metrics = new AnalyzerMetrics();
+
+        metrics.count(AnalyzerMetrics.Outcome.SAVED);
+        metrics.count(AnalyzerMetrics.Outcome.SAVED);
+        metrics.count(AnalyzerMetrics.Outcome.PATIENT_NOT_FOUND);
+
+        assertThat(metrics.getSavedCount()).isEqualTo(2);
+        assertThat(metrics.getPatientNotFoundCount()).isEqualTo(1);
+        assertThat(metrics.getSkippedCount()).isZero();
+        assertThat(metrics.getUnparsableAddressCount()).isZero();
+    }
+
+    @Test
+    void shouldCountUnparsableAddressesApartFromOutcomes() {
+        var metrics = new AnalyzerMetrics();
+
+        metrics.countUnparsableAddress();
+        metrics.count(AnalyzerMetrics.Outcome.SKIPPED);
+
+        assertThat(metrics.getUnparsableAddressCount()).isEqualTo(1);
+        assertThat(metrics.getSkippedCount()).isEqualTo(1);
+        assertThat(metrics.getSavedCount()).isZero();
+    }
+
+    @Test
+    void shouldReportHistogramValues() {
+        var histogram = new LatencyHistogram();
+        for (var i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMeanNanos()).isEqualTo(50_500);
+        assertThat(histogram.getMaxNanos()).isEqualTo(100_000);
+        // Percentiles are the upper bound of the matching power of two bucket
+        assertThat(histogram.get50thPercentileNanos()).isBetween(50_000L, 65_535L);
+        assertThat(histogram.get99thPercentileNanos()).isBetween(99_000L, 100_000L);
+    }
+
+    @Test
+    void shouldReportZeroForEmptyHistogram() {
+        var histogram = new LatencyHistogram();
+
+        assertThat(histogram.getMeanNanos()).isZero();
+        assertThat(histogram.get99thPercentileNanos()).isZero();
+    }
+
+    @Test
+    void shouldRegisterAndUnregisterMBeans() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var outcomes = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=AnalyzerMetrics");
+        var save = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=Stage,name=save");
+        var metrics = new AnalyzerMetrics();
+
+        metrics.afterPropertiesSet();
+        try {
+            metrics.count(AnalyzerMetrics.Outcome.SAVED);
+            metrics.record(AnalyzerMetrics.Stage.SAVE, System.nanoTime());
+
+            assertThat(server.getAttribute(outcomes, "SavedCount")).isEqualTo(1L);
+            assertThat(server.getAttribute(save, "Count")).isEqualTo(1L);
+        } finally {
+            metrics.destroy();
+        }
+
+        assertThat(server.isRegistered(outcomes)).isFalse();
+        assertThat(server.isRegistered(save)).isFalse();
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.Address;
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkReorgServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private IOnkostarApi onkostarApi;
+
+    @BeforeEach
+    void setup(
+            @Mock IOnkostarApi onkostarApi
+    ) {
+        this.onkostarApi = onkostarApi;
+    }
+
+    @Test
+    void shouldSaveSplittedAddressOfAllPatients() {
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0), "Teststraße 42"));
+
+        var result = bulkReorgService(4, 7).reorganize(IntStream.range(0, 1000).boxed());
+
+        assertThat(result.getProcessedCount()).isEqualTo(1000);
+        assertThat(result.getChangedCount()).isEqualTo(1000);
+        assertThat(result.getFailedCount()).isZero();
+        verify(onkostarApi, times(1000)).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldProcessDuplicatePatientIdsOnlyOnce() {
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0), "Teststraße 42"));
+
+        var result = bulkReorgService(2, 3).reorganize(Stream.of(1, 2, 1, 3, 2, null, 1));
+
+        assertThat(result.getProcessedCount()).isEqualTo(3);
+        // Each patient is loaded again while holding its lock
+        verify(onkostarApi, times(6)).getPatient(anyInt());
+        verify(onkostarApi, times(3)).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldCountMissingPatientsAndUnchangedAddresses() {
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> {
+            int patientId = invocation.getArgument(0);
+            if (patientId == 2) {
+                return null;
+            }
+            if (patientId == 3) {
+                throw new IllegalStateException("Test");
+            }
+            return dummyPatient(patientId, patientId == 1 ? "Postfach" : "Am Schlag 4");
+        });
+
+        var result = bulkReorgService(1, 100).reorganize(Stream.of(1, 2, 3, 4));
+
+        assertThat(result.getProcessedCount()).isEqualTo(4);
+        assertThat(result.getChangedCount()).isEqualTo(1);
+        assertThat(result.getFailedCount()).isEqualTo(2);
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldReorganizePatientsOfFileUsingJmxOperation() throws Exception {
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0), "Teststraße 42"));
+        var file = tempDir.resolve("patienten.txt");
+        Files.writeString(file, "# Patienten-IDs\n1\n2\n\nabc\n1\n 3 \n", StandardCharsets.UTF_8);
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=BulkReorg");
+        var bulkReorgService = bulkReorgService(2, 2);
+
+        bulkReorgService.afterPropertiesSet();
+        try {
+            var result = server.invoke(name, "reorganize", new Object[]{file.toString()}, new String[]{String.class.getName()});
+            assertThat(result).isEqualTo("Reorganisation gestartet");
+
+            awaitFinished(bulkReorgService);
+            assertThat(server.getAttribute(name, "Status")).asString().startsWith("Beendet: 3 Patienten verarbeitet, 3 geändert, 0 fehlerhaft");
+            verify(onkostarApi, times(3)).savePatient(any(Patient.class));
+        } finally {
+            bulkReorgService.destroy();
+        }
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    void shouldReportMissingFileUsingJmxOperation() {
+        var result = bulkReorgService(1, 10).reorganize(tempDir.resolve("missing.txt").toString());
+
+        assertThat(result).startsWith("Fehler");
+        verify(onkostarApi, never()).getPatient(anyInt());
+    }
+
+    @Test
+    void shouldRejectSecondRunWhileRunning() throws Exception {
+        var release = new CountDownLatch(1);
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return dummyPatient(invocation.getArgument(0), "Teststraße 42");
+        });
+        var file = tempDir.resolve("patienten.txt");
+        Files.writeString(file, "1\n", StandardCharsets.UTF_8);
+        var bulkReorgService = bulkReorgService(1, 10);
+
+        assertThat(bulkReorgService.reorganize(file.toString())).isEqualTo("Reorganisation gestartet");
+        assertThat(bulkReorgService.isRunning()).isTrue();
+        assertThat(bulkReorgService.reorganize(file.toString())).isEqualTo("Fehler: Reorganisation läuft bereits");
+        assertThat(bulkReorgService.getStatus()).startsWith("Läuft");
+
+        release.countDown();
+        awaitFinished(bulkReorgService);
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldWaitForPatientLock() throws Exception {
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0), "Teststraße 42"));
+        var patientLocks = new PatientLocks(4);
+        var held = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var holder = new Thread(() -> patientLocks.runIfLatest("2000000001", () -> {
+            held.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        holder.start();
+        assertThat(held.await(1, TimeUnit.SECONDS)).isTrue();
+
+        var bulkReorgService = bulkReorgService(1, 10, patientLocks);
+        var result = CompletableFuture.supplyAsync(() -> bulkReorgService.reorganize(Stream.of(1)));
+        TimeUnit.MILLISECONDS.sleep(200);
+        verify(onkostarApi, never()).savePatient(any(Patient.class));
+
+        release.countDown();
+        assertThat(result.get(1, TimeUnit.SECONDS).getChangedCount()).isEqualTo(1);
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldUseConfiguredConcurrency() {
+        assertThat(bulkReorgService(3, 10).getConcurrency()).isEqualTo(3);
+    }
+
+    private static void awaitFinished(BulkReorgService bulkReorgService) throws InterruptedException {
+        for (var i = 0; i < 500 && bulkReorgService.isRunning(); i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(bulkReorgService.isRunning()).isFalse();
+    }
+
+    private BulkReorgService bulkReorgService(int concurrency, int chunkSize) {
+        return bulkReorgService(concurrency, chunkSize, new PatientLocks());
+    }
+
+    private BulkReorgService bulkReorgService(int concurrency, int chunkSize, PatientLocks patientLocks) {
+        var properties = new Properties();
+        properties.setProperty(BulkReorgService.CONCURRENCY_KEY, String.valueOf(concurrency));
+        properties.setProperty(BulkReorgService.CHUNK_SIZE_KEY, String.valueOf(chunkSize));
+        var configuration = new PluginConfiguration(properties);
+        return new BulkReorgService(
+                onkostarApi,
+                new ReorgAddressUpdater(
+                        new StreetAddressCache(configuration),
+                        new PatientWriter(onkostarApi, configuration),
+                        new ReorgChangeReport(configuration),
+                        new AnalyzerMetrics()
+                ),
+                patientLocks,
+                configuration
+        );
+    }
+
+    private Patient dummyPatient(int id, String street) {
+        var address = new Address();
+        address.setStreet(street);
+        address.setZipCode("01234");
+        address.setCity("Musterhausen");
+
+        var result = new Patient(onkostarApi);
+        result.setId(id);
+        result.setPatientId(String.valueOf(2000000000 + id));
+        result.setAddress(address);
+        return result;
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvFieldsTest {
+
+    @Test
+    void shouldParseQuotedFields() {
+        assertThat(CsvFields.parse("1,\"Am \"\"Schlag\"\", 4\",", ','))
+                .containsExactly("1", "Am \"Schlag\", 4", "");
+    }
+
+    @Test
+    void shouldQuoteFieldsOnlyIfRequired() {
+        var builder = new StringBuilder();
+
+        CsvFields.append(builder, "Am Schlag 4", ';');
+        builder.append(';');
+        CsvFields.append(builder, "Testweg; \"42\"", ';');
+        builder.append(';');
+        CsvFields.append(builder, "erste\nzweite", ';');
+
+        assertThat(builder).hasToString("Am Schlag 4;\"Testweg; \"\"42\"\"\";\"erste\nzweite\"");
+    }
+
+}
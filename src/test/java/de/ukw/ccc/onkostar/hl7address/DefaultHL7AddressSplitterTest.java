@@ -27,8 +27,13 @@ package de.ukw.ccc.onkostar.hl7address;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DefaultHL7AddressSplitterTest {
 
@@ -72,4 +77,115 @@ class DefaultHL7AddressSplitterTest {
         assertEquals("Muster Weg", address.getStreetName());
         assertEquals("1", address.getHouseNumber());
     }
+
+    @Test
+    public void testShouldUseStreetNameAndHouseNumberOfSapMciFormat() {
+        var address = addressSplitter.split("Hauptstr. 1 a&Hauptstr. 1&a^^Musterhausen");
+
+        assertEquals("Hauptstr. 1 a", address.getStreetAddress());
+        assertEquals("Hauptstr. 1", address.getStreetName());
+        assertEquals("a", address.getHouseNumber());
+    }
+
+    @Test
+    public void testShouldDecodeEscapeSequences() {
+        var address = addressSplitter.split("Hof\\T\\Gut-Weg 42^c\\S\\o \\F\\ \\R\\ \\E\\^Musterhausen\\H\\^\\X");
+
+        assertEquals("Hof&Gut-Weg 42", address.getStreetAddress());
+        assertEquals("Hof&Gut-Weg", address.getStreetName());
+        assertEquals("42", address.getHouseNumber());
+        assertEquals("c^o | ~ \\", address.getOtherDesignation());
+        assertEquals("Musterhausen\\H\\", address.getCity());
+        assertEquals("\\X", address.getState());
+    }
+
+    @Test
+    public void testShouldNotUseEscapedSubcomponentSeparatorForSapMciFormat() {
+        var address = addressSplitter.split("Muster Weg 1\\T\\Muster Weg\\T\\1");
+
+        assertEquals("Muster Weg 1&Muster Weg&1", address.getStreetAddress());
+    }
+
+    @Test
+    public void testShouldUseEncodingCharactersOfMessage() {
+        var address = addressSplitter.split("Muster Weg 1#Muster Weg#1*c/S/o*Musterhausen**12345*DE*H", "|*~/#");
+
+        assertEquals("Muster Weg 1", address.getStreetAddress());
+        assertEquals("Muster Weg", address.getStreetName());
+        assertEquals("1", address.getHouseNumber());
+        assertEquals("c*o", address.getOtherDesignation());
+        assertEquals("Musterhausen", address.getCity());
+        assertEquals("12345", address.getPostalCode());
+        assertEquals("DE", address.getCountry());
+        assertEquals("H", address.getAddressType());
+    }
+
+    @ParameterizedTest
+    @CsvFileSource(files = "src/test/resources/testdaten.csv", numLinesToSkip = 1)
+    public void testShouldSplitLikeRegexImplementation(String hl7Address) {
+        var address = addressSplitter.split(hl7Address);
+        var expected = regexSplit(hl7Address);
+
+        assertEquals(expected[0], address.getStreetAddress());
+        assertEquals(expected[1], address.getOtherDesignation());
+        assertEquals(expected[2], address.getCity());
+        assertEquals(expected[3], address.getState());
+        assertEquals(expected[4], address.getPostalCode());
+        assertEquals(expected[5], address.getCountry());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Testweg 42", "Testweg 42^", "Testweg 42^^Musterhausen", " Testweg 42 ^^ Musterhausen ^^"})
+    public void testShouldSplitShortHl7Address(String hl7Address) {
+        var address = addressSplitter.split(hl7Address);
+
+        assertEquals("Testweg 42", address.getStreetAddress());
+        assertEquals("", address.getOtherDesignation());
+        assertEquals(hl7Address.contains("Musterhausen") ? "Musterhausen" : "", address.getCity());
+        assertEquals("", address.getState());
+        assertEquals("", address.getPostalCode());
+        assertEquals("", address.getCountry());
+        assertEquals("", address.getAddressType());
+        assertEquals("Testweg", address.getStreetName());
+        assertEquals("42", address.getHouseNumber());
+    }
+
+    @Test
+    public void testShouldIgnoreAdditionalComponents() {
+        var hl7Address = "Testweg 42^^Musterhausen^^12345^DE^H^^^^^20240101^20241231";
+        var address = addressSplitter.split(hl7Address);
+
+        assertEquals("Testweg 42", address.getStreetAddress());
+        assertEquals("Musterhausen", address.getCity());
+        assertEquals("12345", address.getPostalCode());
+        assertEquals("DE", address.getCountry());
+        assertEquals("H", address.getAddressType());
+    }
+
+    @Test
+    public void testShouldSplitEmptyHl7Address() {
+        var address = addressSplitter.split("");
+
+        assertEquals("", address.getStreetAddress());
+        assertEquals("", address.getCountry());
+    }
+
+    @Test
+    public void testShouldNotSplitNull() {
+        assertThrows(RuntimeException.class, () -> addressSplitter.split(null));
+    }
+
+    private static String[] regexSplit(String hl7address) {
+        var pattern = Pattern.compile("(?<streetAddress>[^\\^]*)\\^(?<otherDesignation>[^\\^]*)\\^(?<city>[^\\^]*)\\^(?<state>[^\\^]*)\\^(?<postalCode>[^\\^]*)\\^(?<country>[^\\^]*)");
+        var matcher = pattern.matcher(hl7address);
+        assertTrue(matcher.find());
+        return new String[]{
+                matcher.group("streetAddress").trim(),
+                matcher.group("otherDesignation").trim(),
+                matcher.group("city").trim(),
+                matcher.group("state").trim(),
+                matcher.group("postalCode").trim(),
+                matcher.group("country").trim()
+        };
+    }
 }
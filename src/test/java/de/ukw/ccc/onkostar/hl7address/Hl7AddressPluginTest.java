@@ -37,6 +37,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.io.ClassPathResource;
 
 import java.io.IOException;
+import java.util.Properties;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -47,6 +48,8 @@ public class Hl7AddressPluginTest {
 
     private IOnkostarApi onkostarApi;
 
+    private AnalyzerMetrics metrics;
+
     private Hl7AddressPlugin plugin;
 
     @BeforeEach
@@ -54,7 +57,27 @@ public class Hl7AddressPluginTest {
             @Mock IOnkostarApi onkostarApi
     ) {
         this.onkostarApi = onkostarApi;
-        this.plugin = new Hl7AddressPlugin(onkostarApi, new DefaultHl7AddressSplitter());
+        this.metrics = new AnalyzerMetrics();
+        this.plugin = createPlugin(new PatientWriter(onkostarApi, new PluginConfiguration()));
+    }
+
+    private Hl7AddressPlugin createPlugin(PatientWriter patientWriter) {
+        return createPlugin(patientWriter, new PatientLocks());
+    }
+
+    private Hl7AddressPlugin createPlugin(PatientWriter patientWriter, PatientLocks patientLocks) {
+        return new Hl7AddressPlugin(
+                new PatientLookupCache(onkostarApi, new PluginConfiguration()),
+                new Hl7MessageFilter(new PluginConfiguration()),
+                new PidExtractor(new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_FULL), new AnalyzerMetrics()),
+                new AddressSelector(new DefaultHl7AddressSplitter(), new PluginConfiguration()),
+                new StreetAddressCache(new PluginConfiguration()),
+                new AddressChangeDetector(),
+                patientWriter,
+                patientLocks,
+                new AddressFingerprintWindow(new PluginConfiguration()),
+                metrics
+        );
     }
 
     @Test
@@ -87,6 +110,196 @@ public class Hl7AddressPluginTest {
         assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("4");
     }
 
+    @Test
+    void shouldIgnoreLeadingEmptyAddressRepetition() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace("|||Testweg 42^", "|||~Testweg 42^"));
+        plugin.analyze(hl7Message);
+
+        var captor = ArgumentCaptor.forClass(Patient.class);
+        verify(onkostarApi, times(1)).savePatient(captor.capture());
+        assertThat(captor.getValue().getAddress().getStreet()).isEqualTo("Testweg");
+        assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("42");
+    }
+
+    @Test
+    void shouldNotSaveEmptyAddress() {
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace("|||Testweg 42^^Musterhausen^^12345^DE|", "|||~|"));
+        plugin.analyze(hl7Message);
+
+        verify(onkostarApi, never()).savePatient(any(Patient.class));
+    }
+
+    @Test
+    void shouldSaveSapMciAddressOfMessageWithCustomEncodingCharacters() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage()
+                .replace("MSH|^~\\&|", "MSH|^~\\#|")
+                .replace("Testweg 42", "Am Weg 1 a#Am Weg 1#a"));
+        plugin.analyze(hl7Message);
+
+        var captor = ArgumentCaptor.forClass(Patient.class);
+        verify(onkostarApi, times(1)).savePatient(captor.capture());
+        assertThat(captor.getValue().getAddress().getStreet()).isEqualTo("Am Weg 1");
+        assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("a");
+    }
+
+    @Test
+    void shouldSaveAddressWithEscapeSequences() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace("Testweg 42", "Hof\\T\\Gut-Weg 42"));
+        plugin.analyze(hl7Message);
+
+        var captor = ArgumentCaptor.forClass(Patient.class);
+        verify(onkostarApi, times(1)).savePatient(captor.capture());
+        assertThat(captor.getValue().getAddress().getStreet()).isEqualTo("Hof&Gut-Weg");
+        assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("42");
+    }
+
+    @Test
+    void shouldNotSaveUnchangedAddress() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Testweg", "42")).when(onkostarApi).getPatient(anyString());
+
+        plugin.analyze(dummyHl7Message(1));
+
+        verify(onkostarApi, never()).savePatient(any(Patient.class));
+        assertThat(metrics.getSkippedWriteCount()).isEqualTo(1);
+        assertThat(metrics.getPerformedWriteCount()).isZero();
+    }
+
+    @Test
+    void shouldBeRelevantForAdtMessageWithAddress() {
+        assertThat(plugin.isRelevantForAnalyzer(dummyHl7Message(1))).isTrue();
+    }
+
+    @Test
+    void shouldNotBeRelevantForOtherMessageTypes() {
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace("ADT^A08", "ORU^R01"));
+
+        assertThat(plugin.isRelevantForAnalyzer(hl7Message)).isFalse();
+    }
+
+    @Test
+    void shouldRecordMetrics() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        plugin.analyze(dummyHl7Message(1));
+
+        assertThat(metrics.getSavedCount()).isEqualTo(1);
+        assertThat(metrics.getSkippedCount()).isZero();
+        assertThat(metrics.getStage(AnalyzerMetrics.Stage.PID_EXTRACTION).getCount()).isEqualTo(1);
+        assertThat(metrics.getStage(AnalyzerMetrics.Stage.PATIENT_LOOKUP).getCount()).isEqualTo(1);
+        assertThat(metrics.getStage(AnalyzerMetrics.Stage.SAVE).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCountUnparsableAddressBesideSavedOutcome() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace("Testweg 42", "Am Markt"));
+        plugin.analyze(hl7Message);
+
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+        assertThat(metrics.getUnparsableAddressCount()).isEqualTo(1);
+        assertThat(metrics.getSavedCount()).isEqualTo(1);
+        assertThat(metrics.getSkippedCount()).isZero();
+    }
+
+    @Test
+    void shouldSkipRepeatedAddressBeforePatientLookup() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        plugin.analyze(dummyHl7Message(1));
+        var a31 = dummyHl7Message(1);
+        a31.setMessage(a31.getMessage().replace("ADT^A08", "ADT^A31"));
+        plugin.analyze(a31);
+
+        verify(onkostarApi, times(1)).getPatient(anyString());
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+        assertThat(metrics.getSavedCount()).isEqualTo(1);
+        assertThat(metrics.getSkippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSupersedeOlderMessageBySkippedRepeatedAddress() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+        var patientLocks = new PatientLocks();
+        var plugin = createPlugin(new PatientWriter(onkostarApi, new PluginConfiguration()), patientLocks);
+
+        plugin.analyze(dummyHl7Message(1));
+        // An older message with another address is still being parsed while the address is redelivered
+        var olderTicket = patientLocks.acquireTicket();
+        plugin.analyze(dummyHl7Message(1));
+
+        assertThat(patientLocks.runIfLatest("2000123456", olderTicket, () -> {})).isFalse();
+        patientLocks.releaseTicket(olderTicket);
+        assertThat(metrics.getSkippedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotSkipRepeatedAddressIfQueuedSaveFailed() throws InterruptedException {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+        doThrow(new IllegalStateException("Test")).doNothing().when(onkostarApi).savePatient(any(Patient.class));
+        var properties = new Properties();
+        properties.setProperty(PatientWriter.ENABLED_KEY, "true");
+        var patientWriter = new PatientWriter(onkostarApi, new PluginConfiguration(properties));
+        var plugin = createPlugin(patientWriter);
+
+        try {
+            plugin.analyze(dummyHl7Message(1));
+            patientWriter.flush();
+            plugin.analyze(dummyHl7Message(1));
+            patientWriter.flush();
+        } finally {
+            patientWriter.destroy();
+        }
+
+        verify(onkostarApi, times(2)).getPatient(anyString());
+        verify(onkostarApi, times(2)).savePatient(any(Patient.class));
+        assertThat(metrics.getSavedCount()).isEqualTo(2);
+        assertThat(metrics.getPerformedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotSkipPreviousAddressAfterOtherAddress() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        plugin.analyze(dummyHl7Message(1));
+        plugin.analyze(dummyHl7Message(2));
+        plugin.analyze(dummyHl7Message(1));
+
+        verify(onkostarApi, times(3)).savePatient(any(Patient.class));
+        // Saved patients are cached again, so following messages do not require a lookup
+        verify(onkostarApi, times(1)).getPatient(anyString());
+        verify(onkostarApi, never()).getPatient(anyInt());
+    }
+
+    @Test
+    void shouldSaveOnlyPreferredAddressOfMultipleAddresses() {
+        doAnswer(invocationOnMock -> dummyPatient(invocationOnMock.getArgument(0), "Teststraße", "1")).when(onkostarApi).getPatient(anyString());
+
+        var hl7Message = dummyHl7Message(1);
+        hl7Message.setMessage(hl7Message.getMessage().replace(
+                "Testweg 42^^Musterhausen^^12345^DE",
+                "Postfach 1^^Musterhausen^^12345^DE^M~Testweg 42^^Musterhausen^^12345^DE^H~Am Schlag 4^^Musterhausen^^12345^DE^C"
+        ));
+        plugin.analyze(hl7Message);
+
+        var captor = ArgumentCaptor.forClass(Patient.class);
+        verify(onkostarApi, times(1)).savePatient(captor.capture());
+        assertThat(captor.getValue().getAddress().getStreet()).isEqualTo("Testweg");
+        assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("42");
+    }
+
     private Hl7Message dummyHl7Message(int id) {
         try {
             var message = new String(new ClassPathResource(String.format("testhl7-%d.hl7", id)).getInputStream().readAllBytes());
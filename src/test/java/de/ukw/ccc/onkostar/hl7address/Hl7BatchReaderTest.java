@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Hl7BatchReaderTest {
+
+    private static final String MESSAGE_1 = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||ADT^A08|1|P|2.3\r"
+            + "PID|||2000123456||Tester^Patrick||||||Testweg 42^^Musterhausen^^12345^DE\r";
+
+    private static final String MESSAGE_2 = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||ADT^A08|2|P|2.5\r"
+            + "PID|||2000123457||Tester^Petra||||||Am Schlag 4^^Musterhausen^^12345^DE\r";
+
+    @Test
+    void shouldReadConcatenatedMessages() {
+        assertThat(readAll(MESSAGE_1 + MESSAGE_2)).containsExactly(MESSAGE_1, MESSAGE_2);
+    }
+
+    @Test
+    void shouldReadMessagesUsingOtherLineSeparators() {
+        assertThat(readAll(MESSAGE_1.replace('\r', '\n') + "\n" + MESSAGE_2.replace("\r", "\r\n")))
+                .containsExactly(MESSAGE_1, MESSAGE_2);
+    }
+
+    @Test
+    void shouldSkipBatchSegments() {
+        var batch = "FHS|^~\\&|SAPHCM\rBHS|^~\\&|SAPHCM\r" + MESSAGE_1 + MESSAGE_2 + "BTS|2\rFTS|1\r";
+
+        assertThat(readAll(batch)).containsExactly(MESSAGE_1, MESSAGE_2);
+    }
+
+    @Test
+    void shouldReturnNoMessageForEmptyFile() {
+        var reader = new Hl7BatchReader(new BufferedReader(new StringReader("FHS|^~\\&\r\r")));
+
+        assertThat(reader.hasNext()).isFalse();
+        assertThatThrownBy(reader::next).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void shouldReturnVersion() {
+        assertThat(Hl7BatchReader.getVersion(MESSAGE_1)).isEqualTo("2.3");
+        assertThat(Hl7BatchReader.getVersion(MESSAGE_2)).isEqualTo("2.5");
+        assertThat(Hl7BatchReader.getVersion("MSH|^~\\&|SAPHCM||||||ADT^A08|1|P|2.4^DEU\r")).isEqualTo("2.4");
+        assertThat(Hl7BatchReader.getVersion("MSH|^~\\&|SAPHCM\r")).isNull();
+    }
+
+    private static List<String> readAll(String content) {
+        var result = new ArrayList<String>();
+        new Hl7BatchReader(new BufferedReader(new StringReader(content))).forEachRemaining(result::add);
+        return result;
+    }
+
+}
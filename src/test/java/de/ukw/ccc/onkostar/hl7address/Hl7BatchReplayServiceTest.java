@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.Address;
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class Hl7BatchReplayServiceTest {
+
+    private static final String MESSAGE = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||%s|%d|P|2.%d\r"
+            + "PID|||%s||Tester^Patrick||||||%s^^Musterhausen^^12345^DE\r";
+
+    @TempDir
+    Path tempDir;
+
+    private IOnkostarApi onkostarApi;
+
+    private final Map<String, Patient> patients = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setup(
+            @Mock IOnkostarApi onkostarApi
+    ) {
+        this.onkostarApi = onkostarApi;
+    }
+
+    @Test
+    void shouldApplyLatestAddressOfEachPatient() throws IOException {
+        doAnswer(invocation -> patients.computeIfAbsent(invocation.getArgument(0), this::dummyPatient))
+                .when(onkostarApi).getPatient(anyString());
+
+        var content = new StringBuilder("FHS|^~\\&|SAPHCM\rBHS|^~\\&|SAPHCM\r");
+        for (var i = 0; i < 300; i++) {
+            var patientId = String.valueOf(2000000000 + i % 10);
+            content.append(String.format(MESSAGE, "ADT^A08", i, 3 + i % 4, patientId, "Teststraße " + i));
+        }
+        content.append(String.format(MESSAGE, "ORU^R01", 300, 5, "2000000000", "Am Schlag 4"));
+        content.append("BTS|301\rFTS|1\r");
+        var file = tempDir.resolve("archive.hl7");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        var result = replayService(4).replay(file);
+
+        assertThat(result.getReadCount()).isEqualTo(301);
+        assertThat(result.getRelevantCount()).isEqualTo(300);
+        assertThat(result.getAnalyzedCount()).isEqualTo(300);
+        assertThat(patients).hasSize(10);
+        for (var i = 0; i < 10; i++) {
+            var address = patients.get(String.valueOf(2000000000 + i)).getAddress();
+            assertThat(address.getStreet()).isEqualTo("Teststraße");
+            assertThat(address.getHouseNumber()).isEqualTo(String.valueOf(290 + i));
+        }
+    }
+
+    @Test
+    void shouldKeepFileOrderForMessagesWithEscapeSequences() throws IOException {
+        doAnswer(invocation -> patients.computeIfAbsent(invocation.getArgument(0), this::dummyPatient))
+                .when(onkostarApi).getPatient(anyString());
+
+        var content = new StringBuilder();
+        for (var i = 0; i < 200; i++) {
+            var patientId = String.valueOf(2000000000 + i % 3);
+            // Escaped addresses are extracted using HAPI, but must use the same worker as all others
+            var address = i % 2 == 0 ? "Teststraße " + i : "Teststraße " + i + "^^Muster\\T\\hausen";
+            content.append(String.format(MESSAGE.replace("^^Musterhausen", ""), "ADT^A08", i, 5, patientId, address));
+        }
+        var file = tempDir.resolve("archive.hl7");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        var result = replayService(4).replay(file);
+
+        assertThat(result.getAnalyzedCount()).isEqualTo(200);
+        assertThat(patients.get("2000000000").getAddress().getHouseNumber()).isEqualTo("198");
+        assertThat(patients.get("2000000001").getAddress().getHouseNumber()).isEqualTo("199");
+        assertThat(patients.get("2000000002").getAddress().getHouseNumber()).isEqualTo("197");
+    }
+
+    @Test
+    void shouldReportMissingFileUsingJmxOperation() {
+        var result = replayService(1).replay(tempDir.resolve("missing.hl7").toString());
+
+        assertThat(result).startsWith("Fehler");
+        verify(onkostarApi, never()).savePatient(any(Patient.class));
+    }
+
+    private Hl7BatchReplayService replayService(int parallelism) {
+        var properties = new Properties();
+        properties.setProperty(Hl7BatchReplayService.PARALLELISM_KEY, String.valueOf(parallelism));
+        var configuration = new PluginConfiguration(properties);
+        var metrics = new AnalyzerMetrics();
+        var plugin = new Hl7AddressPlugin(
+                new PatientLookupCache(onkostarApi, configuration),
+                new Hl7MessageFilter(configuration),
+                new PidExtractor(new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_FULL), metrics),
+                new AddressSelector(new DefaultHl7AddressSplitter(), configuration),
+                new StreetAddressCache(configuration),
+                new AddressChangeDetector(),
+                new PatientWriter(onkostarApi, configuration),
+                new PatientLocks(),
+                new AddressFingerprintWindow(configuration),
+                metrics
+        );
+        return new Hl7BatchReplayService(onkostarApi, plugin, configuration);
+    }
+
+    private Patient dummyPatient(String patientId) {
+        var address = new Address();
+        address.setStreet("Unbekannt");
+        address.setZipCode("12345");
+        address.setCity("Musterhausen");
+
+        var result = new Patient(onkostarApi);
+        result.setId(Integer.parseInt(patientId.substring(2)));
+        result.setPatientId(patientId);
+        result.setAddress(address);
+        return result;
+    }
+
+}
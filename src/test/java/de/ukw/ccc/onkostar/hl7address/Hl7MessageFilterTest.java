@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Hl7MessageFilterTest {
+
+    private static final String MESSAGE = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||%s|280923|P|2.3\r"
+            + "EVN|A08|20231221114754\r"
+            + "PID|||2000123456||Tester^Patrick|Tester|19800101|M|||%s||0170 - 12345678|||||||||||||DE\r";
+
+    private final Hl7MessageFilter messageFilter = new Hl7MessageFilter(new PluginConfiguration(new Properties()));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ADT^A01", "ADT^A04", "ADT^A08", "ADT^A28", "ADT^A31", "ADT^A08^ADT_A01", "adt^a08"})
+    void shouldAcceptDefaultMessageTypes(String messageType) {
+        assertThat(messageFilter.isRelevant(message(messageType, "Testweg 42^^Musterhausen^^12345^DE"))).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ORU^R01", "MDM^T02", "SIU^S12", "ADT^A03", "ADT", ""})
+    void shouldRejectOtherMessageTypes(String messageType) {
+        assertThat(messageFilter.isRelevant(message(messageType, "Testweg 42^^Musterhausen^^12345^DE"))).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "^^^^^", "~", "^&^"})
+    void shouldRejectEmptyPatientAddress(String patientAddress) {
+        assertThat(messageFilter.isRelevant(message("ADT^A08", patientAddress))).isFalse();
+    }
+
+    @Test
+    void shouldRejectMessageWithoutPid() {
+        var message = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||ADT^A08|280923|P|2.3\rEVN|A08|20231221114754\r";
+
+        assertThat(messageFilter.isRelevant(message)).isFalse();
+    }
+
+    @Test
+    void shouldRejectShortPid() {
+        var message = "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||ADT^A08|280923|P|2.3\rPID|||2000123456\r";
+
+        assertThat(messageFilter.isRelevant(message)).isFalse();
+    }
+
+    @Test
+    void shouldUseEncodingCharactersOfMessage() {
+        var message = "MSH#$*!@#SAPHCM#Cloverleaf#Onkostar$Onko##20231221114754##ADT$A08#280923#P#2.3\n"
+                + "PID###2000123456##Tester$Patrick#Tester#19800101#M###Testweg 42$$Musterhausen$$12345$DE\n";
+
+        assertThat(messageFilter.isRelevant(message)).isTrue();
+    }
+
+    @Test
+    void shouldAcceptAllMessageTypesIfConfigured() {
+        var properties = new Properties();
+        properties.setProperty(Hl7MessageFilter.RELEVANT_MESSAGE_TYPES_KEY, "*");
+        var messageFilter = new Hl7MessageFilter(new PluginConfiguration(properties));
+
+        assertThat(messageFilter.isRelevant(message("ORU^R01", "Testweg 42^^Musterhausen^^12345^DE"))).isTrue();
+        assertThat(messageFilter.isRelevant(message("ORU^R01", ""))).isFalse();
+    }
+
+    @Test
+    void shouldUseConfiguredMessageTypes() {
+        var properties = new Properties();
+        properties.setProperty(Hl7MessageFilter.RELEVANT_MESSAGE_TYPES_KEY, "ADT^A03, ORU^R01");
+        var messageFilter = new Hl7MessageFilter(new PluginConfiguration(properties));
+
+        assertThat(messageFilter.isRelevant(message("ORU^R01", "Testweg 42^^Musterhausen^^12345^DE"))).isTrue();
+        assertThat(messageFilter.isRelevant(message("ADT^A08", "Testweg 42^^Musterhausen^^12345^DE"))).isFalse();
+    }
+
+    @Test
+    void shouldPassOnMessageWithoutMsh() {
+        assertThat(messageFilter.isRelevant("PID|||2000123456")).isTrue();
+        assertThat(messageFilter.isRelevant(null)).isTrue();
+    }
+
+    private static String message(String messageType, String patientAddress) {
+        return String.format(MESSAGE, messageType, patientAddress);
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientLocksTest {
+
+    @Test
+    void shouldUsePowerOfTwoStripeCount() {
+        assertThat(new PatientLocks(1).getStripeCount()).isEqualTo(1);
+        assertThat(new PatientLocks(12).getStripeCount()).isEqualTo(16);
+        assertThat(new PatientLocks(16).getStripeCount()).isEqualTo(16);
+    }
+
+    @Test
+    void shouldRunActionIfNoOtherMessageArrived() {
+        var patientLocks = new PatientLocks(4);
+        var counter = new AtomicInteger();
+
+        assertThat(patientLocks.runIfLatest("2000123456", counter::incrementAndGet)).isTrue();
+        assertThat(patientLocks.runIfLatest("2000123456", counter::incrementAndGet)).isTrue();
+        assertThat(counter).hasValue(2);
+        assertThat(patientLocks.getSupersededCount()).isZero();
+    }
+
+    @Test
+    void shouldSkipMessageIfNewerMessageArrived() throws Exception {
+        var patientLocks = new PatientLocks(4);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var processed = Collections.synchronizedList(new ArrayList<String>());
+
+        var first = new Thread(() -> patientLocks.runIfLatest("2000123456", () -> {
+            running.countDown();
+            await(release);
+            processed.add("first");
+        }));
+        first.start();
+        running.await(1, TimeUnit.SECONDS);
+
+        var second = startWaiting(patientLocks, "2000123456", "second", processed);
+        var third = startWaiting(patientLocks, "2000123456", "third", processed);
+
+        release.countDown();
+        first.join(1000);
+        second.join(1000);
+        third.join(1000);
+
+        assertThat(processed).containsExactly("first", "third");
+        assertThat(patientLocks.getSupersededCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSkipEarlierMessageIfItFinishesParsingLater() {
+        var patientLocks = new PatientLocks(4);
+        var processed = new ArrayList<String>();
+
+        var earlier = patientLocks.acquireTicket();
+        var later = patientLocks.acquireTicket();
+
+        assertThat(patientLocks.runIfLatest("2000123456", later, () -> processed.add("later"))).isTrue();
+        patientLocks.releaseTicket(later);
+        patientLocks.removeObsoleteTickets();
+        assertThat(patientLocks.runIfLatest("2000123456", earlier, () -> processed.add("earlier"))).isFalse();
+        patientLocks.releaseTicket(earlier);
+
+        assertThat(processed).containsExactly("later");
+        assertThat(patientLocks.getSupersededCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldForgetTicketsIfNoOlderMessageInFlight() {
+        var patientLocks = new PatientLocks(4);
+
+        var earlier = patientLocks.acquireTicket();
+        patientLocks.runIfLatest("2000123456", () -> {});
+        patientLocks.removeObsoleteTickets();
+        assertThat(patientLocks.getRememberedTicketCount()).isEqualTo(1);
+
+        patientLocks.releaseTicket(earlier);
+        patientLocks.removeObsoleteTickets();
+        assertThat(patientLocks.getRememberedTicketCount()).isZero();
+    }
+
+    @Test
+    void shouldSerializeActionsForSamePatient() throws Exception {
+        var patientLocks = new PatientLocks(4);
+        var active = new AtomicInteger();
+        var maxActive = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+
+        for (var i = 0; i < 8; i++) {
+            var thread = new Thread(() -> {
+                for (var j = 0; j < 100; j++) {
+                    patientLocks.runIfLatest("2000123456", () -> {
+                        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                        active.decrementAndGet();
+                    });
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join(5000);
+        }
+
+        assertThat(maxActive).hasValue(1);
+    }
+
+    private static Thread startWaiting(PatientLocks patientLocks, String patientId, String name, List<String> processed) throws InterruptedException {
+        var thread = new Thread(() -> patientLocks.runIfLatest(patientId, () -> processed.add(name)));
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        return thread;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
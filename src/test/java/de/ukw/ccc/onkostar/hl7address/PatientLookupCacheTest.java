@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PatientLookupCacheTest {
+
+    private IOnkostarApi onkostarApi;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @BeforeEach
+    void setup(
+            @Mock IOnkostarApi onkostarApi
+    ) {
+        this.onkostarApi = onkostarApi;
+    }
+
+    @Test
+    void shouldReturnCachedPatientWithoutLookup() {
+        when(onkostarApi.getPatient(anyString())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0)));
+        var cache = cache(10);
+
+        var first = cache.getPatient("2000123456");
+        var patient = cache.getPatient("2000123456");
+
+        assertThat(patient).isSameAs(first);
+        verify(onkostarApi, times(1)).getPatient(anyString());
+        verify(onkostarApi, never()).getPatient(anyInt());
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLoadEvictedPatientByOnkostarId() {
+        when(onkostarApi.getPatient(anyString())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0)));
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient("2000123456"));
+        var cache = cache(10);
+
+        cache.getPatient("2000123456");
+        cache.evictPatient("2000123456");
+        var patient = cache.getPatient("2000123456");
+        cache.getPatient("2000123456");
+
+        assertThat(patient.getPatientId()).isEqualTo("2000123456");
+        verify(onkostarApi, times(1)).getPatient(anyString());
+        verify(onkostarApi, times(1)).getPatient(42);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReturnSavedPatientWithoutLookup() {
+        when(onkostarApi.getPatient(anyString())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0)));
+        var cache = cache(10);
+        var saved = dummyPatient("2000123456");
+
+        cache.getPatient("2000123456");
+        cache.evictPatient("2000123456");
+        cache.putPatient("2000123456", saved);
+
+        assertThat(cache.getPatient("2000123456")).isSameAs(saved);
+        verify(onkostarApi, times(1)).getPatient(anyString());
+        verify(onkostarApi, never()).getPatient(anyInt());
+    }
+
+    @Test
+    void shouldRememberUnknownPatient() {
+        var cache = cache(10);
+
+        assertThat(cache.getPatient("2000123456")).isNull();
+        assertThat(cache.getPatient("2000123456")).isNull();
+
+        verify(onkostarApi, times(1)).getPatient("2000123456");
+        verify(onkostarApi, never()).getPatient(anyInt());
+    }
+
+    @Test
+    void shouldExpireUnknownPatientAfterNegativeTtl() {
+        var cache = cache(10);
+
+        cache.getPatient("2000123456");
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        cache.getPatient("2000123456");
+
+        verify(onkostarApi, times(2)).getPatient("2000123456");
+    }
+
+    @Test
+    void shouldExpireKnownPatientAfterTtl() {
+        when(onkostarApi.getPatient(anyString())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0)));
+        var cache = cache(10);
+
+        cache.getPatient("2000123456");
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.getPatient("2000123456");
+
+        verify(onkostarApi, times(2)).getPatient("2000123456");
+        verify(onkostarApi, never()).getPatient(anyInt());
+    }
+
+    @Test
+    void shouldLookupAgainIfCachedIdIsStale() {
+        when(onkostarApi.getPatient(anyString())).thenAnswer(invocation -> dummyPatient(invocation.getArgument(0)));
+        when(onkostarApi.getPatient(anyInt())).thenReturn(null);
+        var cache = cache(10);
+
+        cache.getPatient("2000123456");
+        cache.evictPatient("2000123456");
+        var patient = cache.getPatient("2000123456");
+
+        assertThat(patient).isNotNull();
+        verify(onkostarApi, times(2)).getPatient("2000123456");
+    }
+
+    @Test
+    void shouldNotExceedMaximumSize() {
+        var cache = cache(2);
+
+        cache.getPatient("1");
+        cache.getPatient("2");
+        cache.getPatient("3");
+        cache.getPatient("1");
+
+        verify(onkostarApi, times(2)).getPatient("1");
+    }
+
+    @Test
+    void shouldNotCacheIfDisabled() {
+        var cache = cache(0);
+
+        cache.getPatient("2000123456");
+        cache.getPatient("2000123456");
+
+        verify(onkostarApi, times(2)).getPatient("2000123456");
+    }
+
+    private PatientLookupCache cache(int maximumSize) {
+        return new PatientLookupCache(onkostarApi, maximumSize, 60, 30, nanoTime::get);
+    }
+
+    private Patient dummyPatient(String patientId) {
+        var result = new Patient(onkostarApi);
+        result.setId(42);
+        result.setPatientId(patientId);
+        return result;
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class PatientWriterTest {
+
+    private IOnkostarApi onkostarApi;
+
+    private PatientWriter patientWriter;
+
+    @BeforeEach
+    void setup(
+            @Mock IOnkostarApi onkostarApi
+    ) {
+        this.onkostarApi = onkostarApi;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (null != patientWriter) {
+            patientWriter.destroy();
+        }
+    }
+
+    @Test
+    void shouldSaveImmediatelyIfDisabled() {
+        patientWriter = new PatientWriter(onkostarApi, new PluginConfiguration(new Properties()));
+
+        patientWriter.save(patient(1));
+
+        verify(onkostarApi, times(1)).savePatient(any());
+        assertThat(patientWriter.getPendingCount()).isZero();
+    }
+
+    @Test
+    void shouldSaveOnlyLatestUpdateOfPatient() {
+        patientWriter = writeBehind(100, 60_000, 100);
+        var latest = patient(1);
+
+        patientWriter.save(patient(1));
+        patientWriter.save(patient(1));
+        patientWriter.save(latest);
+        patientWriter.flush();
+
+        var captor = ArgumentCaptor.forClass(Patient.class);
+        verify(onkostarApi, times(1)).savePatient(captor.capture());
+        assertThat(captor.getValue()).isSameAs(latest);
+    }
+
+    @Test
+    void shouldSaveBatchIfBatchSizeReached() {
+        patientWriter = writeBehind(3, 60_000, 100);
+
+        patientWriter.save(patient(1));
+        patientWriter.save(patient(2));
+        verify(onkostarApi, never()).savePatient(any());
+
+        patientWriter.save(patient(3));
+        verify(onkostarApi, timeout(1000).times(3)).savePatient(any());
+    }
+
+    @Test
+    void shouldSaveBatchIfFlushIntervalElapsed() {
+        patientWriter = writeBehind(100, 50, 100);
+
+        patientWriter.save(patient(1));
+
+        verify(onkostarApi, timeout(1000).times(1)).savePatient(any());
+    }
+
+    @Test
+    void shouldBlockIfQueueIsFull() throws Exception {
+        patientWriter = writeBehind(100, 60_000, 2);
+        patientWriter.save(patient(1));
+        patientWriter.save(patient(2));
+
+        var blocked = CompletableFuture.runAsync(() -> patientWriter.save(patient(3)));
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertThat(blocked).isNotDone();
+
+        patientWriter.flush();
+        blocked.get(1, TimeUnit.SECONDS);
+        patientWriter.flush();
+        verify(onkostarApi, times(3)).savePatient(any());
+    }
+
+    @Test
+    void shouldSavePendingPatientsOnShutdown() throws InterruptedException {
+        patientWriter = writeBehind(100, 60_000, 100);
+        patientWriter.save(patient(1));
+        patientWriter.save(patient(2));
+
+        patientWriter.destroy();
+
+        verify(onkostarApi, times(2)).savePatient(any());
+        assertThat(patientWriter.getPendingCount()).isZero();
+    }
+
+    @Test
+    void shouldSaveBlockedPatientOnShutdown() throws Exception {
+        patientWriter = writeBehind(100, 60_000, 1);
+        patientWriter.save(patient(1));
+
+        var producer = new Thread(() -> patientWriter.save(patient(2)));
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        patientWriter.destroy();
+        producer.join(1000);
+
+        assertThat(producer.isAlive()).isFalse();
+        verify(onkostarApi, times(2)).savePatient(any());
+        assertThat(patientWriter.getPendingCount()).isZero();
+    }
+
+    @Test
+    void shouldNotOverwriteUpdateDuringShutdownWithOlderPendingUpdate() throws Exception {
+        patientWriter = writeBehind(100, 60_000, 100);
+        var saving = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var blocking = patient(2);
+        var older = patient(1);
+        var newer = patient(1);
+        var saved = Collections.synchronizedList(new ArrayList<Patient>());
+        doAnswer(invocation -> {
+            Patient patient = invocation.getArgument(0);
+            if (patient == blocking) {
+                saving.countDown();
+                release.await(1, TimeUnit.SECONDS);
+            }
+            saved.add(patient);
+            return null;
+        }).when(onkostarApi).savePatient(any());
+        patientWriter.save(blocking);
+        patientWriter.save(older);
+
+        var shutdown = CompletableFuture.runAsync(() -> {
+            try {
+                patientWriter.destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(saving.await(1, TimeUnit.SECONDS)).isTrue();
+        var producer = CompletableFuture.runAsync(() -> patientWriter.save(newer));
+        TimeUnit.MILLISECONDS.sleep(100);
+        release.countDown();
+        producer.get(1, TimeUnit.SECONDS);
+        shutdown.get(1, TimeUnit.SECONDS);
+
+        assertThat(saved).containsExactly(blocking, older, newer);
+        assertThat(patientWriter.getPendingCount()).isZero();
+    }
+
+    @Test
+    void shouldSaveDirectlyAfterShutdown() throws InterruptedException {
+        patientWriter = writeBehind(100, 60_000, 100);
+        patientWriter.destroy();
+
+        patientWriter.save(patient(1));
+
+        verify(onkostarApi, times(1)).savePatient(any());
+        assertThat(patientWriter.getPendingCount()).isZero();
+    }
+
+    @Test
+    void shouldRunCallbackAfterBatchWasSaved() {
+        patientWriter = writeBehind(100, 60_000, 100);
+        var saved = new AtomicInteger();
+
+        patientWriter.save(patient(1), saved::incrementAndGet);
+        assertThat(saved).hasValue(0);
+
+        patientWriter.flush();
+        assertThat(saved).hasValue(1);
+    }
+
+    @Test
+    void shouldNotRunCallbackIfSaveFailed() {
+        patientWriter = writeBehind(100, 60_000, 100);
+        doThrow(new IllegalStateException("Test")).when(onkostarApi).savePatient(any());
+        var saved = new AtomicInteger();
+
+        patientWriter.save(patient(1), saved::incrementAndGet);
+        patientWriter.flush();
+
+        assertThat(saved).hasValue(0);
+    }
+
+    @Test
+    void shouldRunOnlyCallbackOfLatestUpdate() {
+        patientWriter = writeBehind(100, 60_000, 100);
+        var saved = new StringBuilder();
+
+        patientWriter.save(patient(1), () -> saved.append("first"));
+        patientWriter.save(patient(1), () -> saved.append("latest"));
+        patientWriter.flush();
+
+        assertThat(saved).hasToString("latest");
+    }
+
+    private PatientWriter writeBehind(int batchSize, int flushIntervalMillis, int capacity) {
+        var properties = new Properties();
+        properties.setProperty(PatientWriter.ENABLED_KEY, "true");
+        properties.setProperty(PatientWriter.BATCH_SIZE_KEY, String.valueOf(batchSize));
+        properties.setProperty(PatientWriter.FLUSH_INTERVAL_KEY, String.valueOf(flushIntervalMillis));
+        properties.setProperty(PatientWriter.CAPACITY_KEY, String.valueOf(capacity));
+        return new PatientWriter(onkostarApi, new PluginConfiguration(properties));
+    }
+
+    private Patient patient(int id) {
+        var result = new Patient(onkostarApi);
+        result.setId(id);
+        return result;
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import de.itc.onkostar.api.IOnkostarApi;
+import de.itc.onkostar.api.hl7.Hl7Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+class PidExtractorTest {
+
+    private IOnkostarApi onkostarApi;
+
+    private PidExtractor pidExtractor;
+
+    private PidExtractor partialPidExtractor;
+
+    @BeforeEach
+    void setup(
+            @Mock IOnkostarApi onkostarApi
+    ) {
+        this.onkostarApi = onkostarApi;
+        this.pidExtractor = new PidExtractor(new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_FULL), new AnalyzerMetrics());
+        this.partialPidExtractor = new PidExtractor(new PipeParserRegistry(PipeParserRegistry.PARSE_MODE_PARTIAL), new AnalyzerMetrics());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2.3", "2.4", "2.5", "2.6"})
+    void shouldExtractPatientIdAndAddresses(String hl7version) throws Exception {
+        var pidData = pidExtractor.extract(dummyHl7Message(1, hl7version));
+
+        assertThat(pidData.getPatientId()).hasValue("2000123456");
+        assertThat(pidData.getAddresses()).containsExactly("Testweg 42^^Musterhausen^^12345^DE");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2.3", "2.4", "2.5", "2.6"})
+    void shouldScanTestMessagesLikeHapi(String hl7version) throws Exception {
+        for (var id = 1; id <= 2; id++) {
+            assertScanLikeHapi(dummyHl7Message(id, hl7version));
+        }
+    }
+
+    @Test
+    void shouldScanGeneratedMessagesLikeHapi() throws Exception {
+        var random = new Random(42);
+        var versions = new String[]{"2.3", "2.4", "2.5", "2.6"};
+        var components = new String[]{"", "Testweg 42", "Muster Weg 1&Muster Weg&1", "Am Schlag 4&&", "&", "Musterhausen", "12345", "DE", "H", " "};
+
+        for (var i = 0; i < 2_000; i++) {
+            var hl7version = versions[random.nextInt(versions.length)];
+            var patientId = random.nextInt(4) == 0 ? "" : Integer.toString(random.nextInt(Integer.MAX_VALUE));
+            if (random.nextBoolean()) {
+                patientId += "^^^KH~" + random.nextInt(1000);
+            }
+
+            var addresses = new StringBuilder();
+            var repetitions = random.nextInt(4);
+            for (var repetition = 0; repetition < repetitions; repetition++) {
+                if (repetition > 0) {
+                    addresses.append('~');
+                }
+                var componentCount = random.nextInt(9);
+                for (var component = 0; component < componentCount; component++) {
+                    if (component > 0) {
+                        addresses.append('^');
+                    }
+                    addresses.append(components[random.nextInt(components.length)]);
+                }
+            }
+            if (random.nextInt(5) == 0) {
+                addresses.append('~');
+            }
+
+            var message = String.format(
+                    "MSH|^~\\&|SAPHCM|Cloverleaf|Onkostar^Onko||20231221114754||ADT^A08|%d|P|%s\r"
+                            + "EVN|A08|20231221114754\r"
+                            + "PID|||%s||Tester^Patrick|Tester|19800101|M|||%s||0170 - 12345678|||||||||||||DE\r",
+                    i, hl7version, patientId, addresses
+            );
+            var hl7Message = new Hl7Message(onkostarApi);
+            hl7Message.setHl7Version(hl7version);
+            hl7Message.setMessage(message);
+
+            assertScanLikeHapi(hl7Message);
+        }
+    }
+
+    @Test
+    void shouldUseHapiForCustomEncodingCharacters() throws Exception {
+        var hl7Message = dummyHl7Message(1, "2.3");
+        hl7Message.setMessage(hl7Message.getMessage().replace("MSH|^~\\&|", "MSH|^~\\#|"));
+
+        assertThat(Er7PidScanner.scan(hl7Message.getMessage())).isNull();
+        assertThat(pidExtractor.extract(hl7Message).getPatientId()).hasValue("2000123456");
+    }
+
+    @Test
+    void shouldUseHapiForEscapeSequences() throws Exception {
+        var hl7Message = dummyHl7Message(1, "2.3");
+        hl7Message.setMessage(hl7Message.getMessage().replace("Testweg 42", "Testweg\\T\\42"));
+
+        assertThat(Er7PidScanner.scan(hl7Message.getMessage())).isNull();
+        assertThat(pidExtractor.extract(hl7Message).getAddresses()).containsExactly("Testweg\\T\\42^^Musterhausen^^12345^DE");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2.2", "2.5.1", "2.7", "2.8"})
+    void shouldUseHapiForOtherVersions(String hl7version) throws Exception {
+        var hl7Message = dummyHl7Message(1, hl7version);
+        hl7Message.setMessage(hl7Message.getMessage().replace("Testweg 42", "Testweg\\T\\42"));
+
+        for (var extractor : List.of(pidExtractor, partialPidExtractor)) {
+            var pidData = extractor.extract(hl7Message);
+
+            assertThat(pidData.getPatientId()).hasValue("2000123456");
+            assertThat(pidData.getAddresses()).containsExactly("Testweg\\T\\42^^Musterhausen^^12345^DE");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2.3", "2.4", "2.5", "2.6"})
+    void shouldFindPidInGroups(String hl7version) throws Exception {
+        var hl7Message = new Hl7Message(onkostarApi);
+        hl7Message.setHl7Version(hl7version);
+        hl7Message.setMessage(
+                "MSH|^~\\&|LAB|KH|Onkostar||20231221114754||ORU^R01|1|P|" + hl7version + "\r"
+                        + "PID|||2000123456||Tester^Patrick|Tester|19800101|M|||Testweg\\T\\42^^Musterhausen^^12345^DE\r"
+                        + "OBR|1||1234|LAB^Befund\r"
+                        + "OBX|1|TX|LAB^Befund||Text||||||F\r"
+        );
+
+        var pidData = pidExtractor.extract(hl7Message);
+
+        assertThat(pidData.getPatientId()).hasValue("2000123456");
+        assertThat(pidData.getAddresses()).containsExactly("Testweg\\T\\42^^Musterhausen^^12345^DE");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2.3", "2.4", "2.5", "2.6"})
+    void shouldIgnoreOtherSegmentsInPartialParseMode(String hl7version) throws Exception {
+        var hl7Message = dummyHl7Message(1, hl7version);
+        var message = new StringBuilder(hl7Message.getMessage().stripTrailing()).append('\r');
+        for (var i = 1; i <= 100; i++) {
+            message.append("OBX|").append(i).append("|TX|LAB^Befund||").append("Befundtext ".repeat(50)).append("||||||F\r");
+        }
+        message.append("ZXX|1|").append("x".repeat(10_000)).append('\r');
+        hl7Message.setMessage(message.toString().replace("Testweg 42", "Testweg\\T\\42"));
+
+        var pidData = partialPidExtractor.extract(hl7Message);
+
+        assertThat(pidData.getPatientId()).hasValue("2000123456");
+        assertThat(pidData.getAddresses()).containsExactly("Testweg\\T\\42^^Musterhausen^^12345^DE");
+        assertThat(pidData.getAddresses()).isEqualTo(pidExtractor.extractUsingHapi(hl7Message).getAddresses());
+    }
+
+    private void assertScanLikeHapi(Hl7Message hl7Message) throws Exception {
+        var scanned = Er7PidScanner.scan(hl7Message.getMessage());
+        var parsed = pidExtractor.extractUsingHapi(hl7Message);
+        var partiallyParsed = partialPidExtractor.extractUsingHapi(hl7Message);
+
+        assertThat(scanned).as("scan result of %s", hl7Message.getMessage()).isNotNull();
+        assertThat(scanned.getPatientId()).as("patient id of %s", hl7Message.getMessage()).isEqualTo(parsed.getPatientId());
+        assertThat(scanned.getAddresses()).as("addresses of %s", hl7Message.getMessage()).isEqualTo(parsed.getAddresses());
+        assertThat(partiallyParsed.getPatientId()).as("partially parsed patient id of %s", hl7Message.getMessage()).isEqualTo(parsed.getPatientId());
+        assertThat(partiallyParsed.getAddresses()).as("partially parsed addresses of %s", hl7Message.getMessage()).isEqualTo(parsed.getAddresses());
+    }
+
+    private Hl7Message dummyHl7Message(int id, String hl7version) throws IOException {
+        var message = new String(new ClassPathResource(String.format("testhl7-%d.hl7", id)).getInputStream().readAllBytes());
+        var result = new Hl7Message(onkostarApi);
+        result.setHl7Version(hl7version);
+        result.setMessage(message.replace("|P|2.3", "|P|" + hl7version));
+        return result;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipeParserRegistryTest {
+
+    @Test
+    void shouldRestrictToMshAndFirstPid() {
+        var message = "MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\r\n"
+                + "EVN|A08|20231221114754\r\n"
+                + "PID|||1||Tester^Patrick\r\n"
+                + "OBX|1|TX|LAB||Text\r\n"
+                + "PID|||2||Tester^Paula\r\n";
+
+        assertThat(PipeParserRegistry.restrictToMshAndPid(message))
+                .isEqualTo("MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\rPID|||1||Tester^Patrick\r");
+    }
+
+    @Test
+    void shouldNotMistakeOtherSegmentsForPid() {
+        var message = "MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\rPIDX|1\rPID|||1\r";
+
+        assertThat(PipeParserRegistry.restrictToMshAndPid(message))
+                .isEqualTo("MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\rPID|||1\r");
+    }
+
+    @Test
+    void shouldKeepMshWithoutPid() {
+        var message = "MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\rEVN|A08\r";
+
+        assertThat(PipeParserRegistry.restrictToMshAndPid(message))
+                .isEqualTo("MSH|^~\\&|A|B|C||20231221114754||ADT^A08|1|P|2.5\r");
+    }
+
+    @Test
+    void shouldNotChangeMessageWithoutMsh() {
+        assertThat(PipeParserRegistry.restrictToMshAndPid("PID|||1\r")).isEqualTo("PID|||1\r");
+        assertThat(PipeParserRegistry.restrictToMshAndPid(null)).isNull();
+    }
+
+    @Test
+    void shouldUseConfiguredParseMode() {
+        var properties = new Properties();
+        properties.setProperty(PipeParserRegistry.PARSE_MODE_KEY, "Partial");
+        var registry = new PipeParserRegistry(new PluginConfiguration(properties));
+
+        assertThat(registry.isPartial()).isTrue();
+        registry.destroy();
+    }
+
+    @Test
+    void shouldUseFullParseModeByDefault() {
+        var registry = new PipeParserRegistry(new PluginConfiguration(new Properties()));
+
+        assertThat(registry.isPartial()).isFalse();
+        registry.destroy();
+    }
+
+    @Test
+    void shouldRejectUnknownParseMode() {
+        assertThatThrownBy(() -> new PipeParserRegistry("segments")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -31,6 +31,7 @@ import de.itc.onkostar.api.Patient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -38,9 +39,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -50,12 +55,15 @@ public class ReorgAddressPluginTest {
 
     private ReorgAddressPlugin plugin;
 
+    private AnalyzerMetrics metrics;
+
     @BeforeEach
     void setup(
             @Mock IOnkostarApi onkostarApi
     ) {
         this.onkostarApi = onkostarApi;
-        this.plugin = new ReorgAddressPlugin(onkostarApi);
+        this.metrics = new AnalyzerMetrics();
+        this.plugin = reorgAddressPlugin(new ReorgChangeReport(new PluginConfiguration()));
     }
 
     @ParameterizedTest
@@ -110,6 +118,76 @@ public class ReorgAddressPluginTest {
         assertThat(captor.getValue().getAddress().getHouseNumber()).isEqualTo("4");
     }
 
+    @Test
+    void shouldProcessPatientOnlyOnceWithinRun() {
+        var patient = dummyPatient("Teststraße 42", "");
+
+        when(onkostarApi.getPatient(anyInt())).thenReturn(patient);
+
+        plugin.analyze(null, dummyDisease(patient));
+        plugin.analyze(null, dummyDisease(patient));
+        plugin.analyze(null, dummyDisease(patient));
+
+        verify(onkostarApi, times(1)).getPatient(anyInt());
+        verify(onkostarApi, times(1)).savePatient(any(Patient.class));
+        assertThat(metrics.getPerformedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRetryPatientForOtherDiseaseIfSaveFailed() {
+        var patient = dummyPatient("Teststraße 42", "");
+
+        // Each disease loads the stored patient again
+        when(onkostarApi.getPatient(anyInt())).thenAnswer(invocation -> dummyPatient("Teststraße 42", ""));
+        doThrow(new RuntimeException("Datenbank nicht erreichbar")).doNothing()
+                .when(onkostarApi).savePatient(any(Patient.class));
+
+        assertThatThrownBy(() -> plugin.analyze(null, dummyDisease(patient))).isInstanceOf(RuntimeException.class);
+        plugin.analyze(null, dummyDisease(patient));
+        plugin.analyze(null, dummyDisease(patient));
+
+        verify(onkostarApi, times(2)).getPatient(anyInt());
+        verify(onkostarApi, times(2)).savePatient(any(Patient.class));
+        assertThat(metrics.getPerformedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReportChangeInDryRunMode(@TempDir Path tempDir) throws Exception {
+        var properties = new Properties();
+        properties.setProperty(ReorgChangeReport.DRY_RUN_KEY, "true");
+        properties.setProperty(ReorgChangeReport.REPORT_FILE_KEY, tempDir.resolve("report.csv").toString());
+        var changeReport = new ReorgChangeReport(new PluginConfiguration(properties));
+        var plugin = reorgAddressPlugin(changeReport);
+        var patient = dummyPatient("Am Schlag 4", "");
+
+        when(onkostarApi.getPatient(anyInt())).thenReturn(patient);
+
+        plugin.analyze(null, dummyDisease(patient));
+        changeReport.destroy();
+
+        verify(onkostarApi, never()).savePatient(any(Patient.class));
+        assertThat(metrics.getReportedCount()).isEqualTo(1);
+        assertThat(metrics.getPerformedWriteCount()).isZero();
+        assertThat(patient.getAddress().getStreet()).isEqualTo("Am Schlag 4");
+        assertThat(Files.readAllLines(tempDir.resolve("report.csv"))).containsExactly(
+                ReorgChangeReport.HEADER,
+                "2000123456;Am Schlag 4;;Am Schlag;4"
+        );
+    }
+
+    private ReorgAddressPlugin reorgAddressPlugin(ReorgChangeReport changeReport) {
+        return new ReorgAddressPlugin(
+                new ReorgProcessedPatients(new PluginConfiguration()),
+                new ReorgAddressUpdater(
+                        new StreetAddressCache(new PluginConfiguration()),
+                        new PatientWriter(onkostarApi, new PluginConfiguration()),
+                        changeReport,
+                        metrics
+                ),
+                metrics
+        );
+    }
+
     private Patient dummyPatient(String street, String houseNumber) {
         var address = new Address();
         address.setStreet(street);
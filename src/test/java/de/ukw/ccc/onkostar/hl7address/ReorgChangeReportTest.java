@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReorgChangeReportTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldNotWriteReportIfDisabled() throws InterruptedException {
+        var changeReport = new ReorgChangeReport(configuration(false));
+
+        changeReport.append("2000123456", "Am Schlag 4", "", "Am Schlag", "4");
+        changeReport.destroy();
+
+        assertThat(changeReport.isEnabled()).isFalse();
+        assertThat(tempDir.resolve("report.csv")).doesNotExist();
+    }
+
+    @Test
+    void shouldWriteAllQueuedChangesOnShutdown() throws Exception {
+        var changeReport = new ReorgChangeReport(configuration(true));
+
+        for (var i = 0; i < 50_000; i++) {
+            changeReport.append(String.valueOf(i), "Teststraße " + i, null, "Teststraße", String.valueOf(i));
+        }
+        changeReport.destroy();
+
+        var lines = Files.readAllLines(tempDir.resolve("report.csv"), StandardCharsets.UTF_8);
+        assertThat(lines).hasSize(50_001);
+        assertThat(lines.get(0)).isEqualTo(ReorgChangeReport.HEADER);
+        assertThat(lines.get(50_000)).isEqualTo("49999;Teststraße 49999;;Teststraße;49999");
+    }
+
+    @Test
+    void shouldAppendToExistingReport() throws Exception {
+        var first = new ReorgChangeReport(configuration(true));
+        first.append("1", "Am Schlag 4", "", "Am Schlag", "4");
+        first.destroy();
+
+        var second = new ReorgChangeReport(configuration(true));
+        second.append("2", "Testweg; 42", "", "Testweg;", "42");
+        second.destroy();
+
+        assertThat(Files.readAllLines(tempDir.resolve("report.csv"), StandardCharsets.UTF_8)).containsExactly(
+                ReorgChangeReport.HEADER,
+                "1;Am Schlag 4;;Am Schlag;4",
+                "2;\"Testweg; 42\";;\"Testweg;\";42"
+        );
+    }
+
+    @Test
+    void shouldNotBlockIfReportCannotBeWritten() throws Exception {
+        var changeReport = new ReorgChangeReport(configuration(true, tempDir));
+
+        var producer = new Thread(() -> {
+            for (var i = 0; i < 20_000; i++) {
+                changeReport.append(String.valueOf(i), "Teststraße " + i, null, "Teststraße", String.valueOf(i));
+            }
+        });
+        producer.start();
+        producer.join(5000);
+        changeReport.destroy();
+
+        assertThat(producer.isAlive()).isFalse();
+    }
+
+    @Test
+    void shouldDiscardChangesAppendedAfterShutdown() throws Exception {
+        var changeReport = new ReorgChangeReport(configuration(true));
+        changeReport.append("1", "Am Schlag 4", "", "Am Schlag", "4");
+        changeReport.destroy();
+
+        var producer = new Thread(() -> {
+            for (var i = 0; i < 20_000; i++) {
+                changeReport.append(String.valueOf(i), "Teststraße " + i, null, "Teststraße", String.valueOf(i));
+            }
+        });
+        producer.start();
+        producer.join(5000);
+
+        assertThat(producer.isAlive()).isFalse();
+        assertThat(Files.readAllLines(tempDir.resolve("report.csv"), StandardCharsets.UTF_8)).containsExactly(
+                ReorgChangeReport.HEADER,
+                "1;Am Schlag 4;;Am Schlag;4"
+        );
+    }
+
+    private PluginConfiguration configuration(boolean dryRun) {
+        return configuration(dryRun, tempDir.resolve("report.csv"));
+    }
+
+    private PluginConfiguration configuration(boolean dryRun, Path reportFile) {
+        var properties = new Properties();
+        properties.setProperty(ReorgChangeReport.DRY_RUN_KEY, String.valueOf(dryRun));
+        properties.setProperty(ReorgChangeReport.REPORT_FILE_KEY, reportFile.toString());
+        return new PluginConfiguration(properties);
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReorgProcessedPatientsTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final ReorgProcessedPatients processedPatients = new ReorgProcessedPatients(60, nanoTime::get);
+
+    @Test
+    void shouldMarkPatientOnlyOnce() {
+        assertThat(processedPatients.markProcessed(42)).isTrue();
+        assertThat(processedPatients.markProcessed(42)).isFalse();
+        assertThat(processedPatients.markProcessed(43)).isTrue();
+    }
+
+    @Test
+    void shouldStartNewRunAfterIdleTimeout() {
+        processedPatients.markProcessed(42);
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertThat(processedPatients.markProcessed(42)).isFalse();
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertThat(processedPatients.markProcessed(42)).isTrue();
+    }
+
+    @Test
+    void shouldReportMarkedPatientAsProcessed() {
+        assertThat(processedPatients.isProcessed(42)).isFalse();
+        processedPatients.markProcessed(42);
+        assertThat(processedPatients.isProcessed(42)).isTrue();
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertThat(processedPatients.isProcessed(42)).isFalse();
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreetAddressCacheTest {
+
+    @Test
+    void shouldReturnCachedSplitResult() {
+        var cache = new StreetAddressCache(10);
+
+        var first = cache.split("Teststraße 42");
+        var second = cache.split("Teststraße 42");
+
+        assertThat(first.getStreetName()).isEqualTo("Teststraße");
+        assertThat(first.getHouseNumber()).isEqualTo("42");
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotExceedMaximumSize() {
+        var cache = new StreetAddressCache(10);
+
+        for (var i = 0; i < 100; i++) {
+            cache.split("Teststraße " + i);
+        }
+
+        assertThat(cache.getSize()).isEqualTo(10);
+        assertThat(cache.getEvictionCount()).isEqualTo(90);
+    }
+
+    @Test
+    void shouldKeepFrequentlyUsedEntriesOnScan() {
+        var cache = new StreetAddressCache(10);
+        var frequent = cache.split("Am Schlag 4");
+        cache.split("Am Schlag 4");
+
+        for (var i = 0; i < 100; i++) {
+            cache.split("Teststraße " + i);
+        }
+
+        assertThat(cache.split("Am Schlag 4")).isSameAs(frequent);
+    }
+
+    @Test
+    void shouldNotExceedMaximumSizeUsingStripes() {
+        var cache = new StreetAddressCache(1000);
+
+        for (var i = 0; i < 10_000; i++) {
+            cache.split("Teststraße " + i);
+        }
+
+        assertThat(cache.getStripeCount()).isEqualTo(8);
+        assertThat(cache.getSize()).isLessThanOrEqualTo(1000);
+        assertThat(cache.getEvictionCount()).isEqualTo(10_000 - cache.getSize());
+    }
+
+    @Test
+    void shouldPublishCountersUsingJmx() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        var name = new ObjectName(AnalyzerMetrics.DOMAIN + ":type=Cache,name=street-address");
+        var cache = new StreetAddressCache(10);
+        cache.split("Teststraße 42");
+        cache.split("Teststraße 42");
+
+        cache.afterPropertiesSet();
+        try {
+            assertThat(server.getAttribute(name, "HitCount")).isEqualTo(1L);
+            assertThat(server.getAttribute(name, "MissCount")).isEqualTo(1L);
+            assertThat(server.getAttribute(name, "Size")).isEqualTo(1);
+        } finally {
+            cache.destroy();
+        }
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @Test
+    void shouldNotCacheIfDisabled() {
+        var cache = new StreetAddressCache(0);
+
+        cache.split("Teststraße 42");
+        cache.split("Teststraße 42");
+
+        assertThat(cache.getSize()).isZero();
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldUseConfiguredCacheSize() {
+        var properties = new Properties();
+        properties.setProperty(StreetAddressCache.CACHE_SIZE_KEY, "5");
+        var cache = new StreetAddressCache(new PluginConfiguration(properties));
+
+        for (var i = 0; i < 10; i++) {
+            cache.split("Teststraße " + i);
+        }
+
+        assertThat(cache.getSize()).isEqualTo(5);
+    }
+
+}
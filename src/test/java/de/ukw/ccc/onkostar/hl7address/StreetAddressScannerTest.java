@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Comprehensive Cancer Center Mainfranken
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package de.ukw.ccc.onkostar.hl7address;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvFileSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreetAddressScannerTest {
+
+    private static final Pattern STREET_ADDRESS_PATTERN = Pattern.compile("(?<streetName>[^,]+)+[,\\s]+(?<houseNumber>([0-9]+[A-Za-z\\s\\-/]*)*)$");
+
+    @ParameterizedTest
+    @CsvFileSource(files = "src/test/resources/testdaten.csv", numLinesToSkip = 1)
+    void shouldMatchLikeRegexForTestData(String hl7Address) {
+        var streetAddress = hl7Address.substring(0, hl7Address.indexOf('^')).trim();
+
+        assertSameAsRegex(streetAddress);
+    }
+
+    @ParameterizedTest
+    @MethodSource("edgeCaseSource")
+    void shouldMatchLikeRegexForEdgeCases(String streetAddress) {
+        assertSameAsRegex(streetAddress);
+    }
+
+    @Test
+    void shouldMatchLikeRegexForRandomInput() {
+        var alphabet = "aB 1 2,-/.ä\t\r\n\u2028";
+        var random = new Random(42);
+        for (var i = 0; i < 20_000; i++) {
+            var length = random.nextInt(12);
+            var builder = new StringBuilder(length);
+            for (var j = 0; j < length; j++) {
+                builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameAsRegex(builder.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("pathologicalSource")
+    @Timeout(value = 500, unit = TimeUnit.MILLISECONDS)
+    void shouldSplitPathologicalInputInLinearTime(String streetAddress) {
+        for (var i = 0; i < 10; i++) {
+            StreetAddressScanner.find(streetAddress);
+        }
+    }
+
+    @Test
+    void shouldSplitPathologicalInput() {
+        var match = StreetAddressScanner.find("a".repeat(100_000) + " 1");
+
+        assertThat(match).isNotNull();
+        assertThat(match.getStreetName()).hasSize(100_000);
+        assertThat(match.getHouseNumber()).isEqualTo("1");
+        assertThat(StreetAddressScanner.find("a ".repeat(50_000) + "!")).isNull();
+        assertThat(StreetAddressScanner.find(", ".repeat(50_000) + "x")).isNull();
+    }
+
+    private static void assertSameAsRegex(String streetAddress) {
+        var matcher = STREET_ADDRESS_PATTERN.matcher(streetAddress);
+        var match = StreetAddressScanner.find(streetAddress);
+
+        if (matcher.find()) {
+            assertThat(match).as("match for '%s'", streetAddress).isNotNull();
+            assertThat(match.getStreetName()).as("street name of '%s'", streetAddress).isEqualTo(matcher.group("streetName"));
+            assertThat(match.getHouseNumber()).as("house number of '%s'", streetAddress).isEqualTo(matcher.group("houseNumber"));
+        } else {
+            assertThat(match).as("no match for '%s'", streetAddress).isNull();
+        }
+    }
+
+    private static Stream<Arguments> edgeCaseSource() {
+        return Stream.of(
+                Arguments.of(""),
+                Arguments.of("Teststraße"),
+                Arguments.of("Teststraße 42"),
+                Arguments.of("Teststraße  42 a"),
+                Arguments.of("Teststraße 42/1-3"),
+                Arguments.of("Teststraße 4ä"),
+                Arguments.of("Teststraße "),
+                Arguments.of("Hauptstr., 5"),
+                Arguments.of("Hauptstr.,5, 6"),
+                Arguments.of(",Hauptstr. 5"),
+                Arguments.of("A1, 1"),
+                Arguments.of("C 3, 3 a"),
+                Arguments.of("a, b, c 1"),
+                Arguments.of("a,,  ,1"),
+                Arguments.of("Teststraße 42\n"),
+                Arguments.of("Teststraße 42 "),
+                Arguments.of("Teststraße  "),
+                Arguments.of("100 Morgen Weg 13")
+        );
+    }
+
+    private static Stream<Arguments> pathologicalSource() {
+        return Stream.of(
+                Arguments.of("a".repeat(200_000) + "!"),
+                Arguments.of("a ".repeat(100_000) + "!"),
+                Arguments.of("1 ".repeat(100_000) + "ä"),
+                Arguments.of("a, ".repeat(100_000) + "ä"),
+                Arguments.of(" ,".repeat(100_000) + "ä"),
+                Arguments.of("Musterstraße 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24 25 26 27 28 29 30!")
+        );
+    }
+
+}